@@ -1,16 +1,35 @@
 package judahzone.fx;
 
 import java.security.InvalidParameterException;
+import java.util.Arrays;
 
 import judahzone.api.FX;
 import judahzone.api.TimeFX;
 import lombok.Getter;
 import lombok.Setter;
 
-public class Chorus implements TimeFX, FX.RTFX {
+/**
+ * Modulated delay per channel.  With 2 or more Voices it becomes an ensemble: every voice
+ * is a phase-offset read of the same line, swept by a wavetable LFO interpolated per sample,
+ * so extra voices cost reads only (no extra buffers, writes or feedback filters).  Within a
+ * control block a voice rarely crosses a whole sample of delay, so its reads are contiguous
+ * and C2 vectorizes them: 6 voices cost well under half of 3 stacked choruses.
+ */
+public class Chorus implements TimeFX, FX.RTFX, Discrete {
 
     public enum Settings {
-        Rate, Depth, Feedback, Type, Sync, Phase
+        Rate, Depth, Feedback, Type, Sync, Phase, Voices
+    }
+
+    public static final int MAX_VOICES = 8;
+    /** seconds, ensemble center delay */
+    static final float ENSEMBLE_DELAY = 0.007f;
+    private static final int TABLE = 1024;
+    /** one sine cycle plus a guard point for interpolation */
+    private static final float[] SINE = new float[TABLE + 1];
+    static {
+        for (int i = 0; i <= TABLE; i++)
+            SINE[i] = (float) Math.sin(2 * Math.PI * i / TABLE);
     }
 
     private static final float PI2 = (float) Math.PI * 2;
@@ -30,6 +49,13 @@ public class Chorus implements TimeFX, FX.RTFX {
     /** between 0 and 1 */
     @Setter @Getter
     private float phase = 0.42f;
+    /** 1: classic chorus, 2 to {@link #MAX_VOICES}: ensemble */
+    @Getter
+    private int voices = 1;
+    // ensemble LFO position in cycles, and per voice/per sample delays of the current channel
+    private float lfoPhase;
+    private final float[] sweep = new float[MAX_VOICES * N_FRAMES];
+    private final float[] mix = new float[N_FRAMES];
 
     private final LFODelay leftDsp = new LFODelay();
     private final LFODelay rightDsp = new LFODelay();
@@ -50,6 +76,12 @@ public class Chorus implements TimeFX, FX.RTFX {
         return Settings.values().length;
     }
 
+    @Override
+    public boolean isDiscrete(int idx) {
+        return idx == Settings.Type.ordinal() || idx == Settings.Sync.ordinal()
+                || idx == Settings.Voices.ordinal();
+    }
+
     @Override
     public int get(int idx) {
         if (idx == Settings.Rate.ordinal())
@@ -64,6 +96,8 @@ public class Chorus implements TimeFX, FX.RTFX {
             return sync ? 1 : 0;
         if (idx == Settings.Phase.ordinal())
             return Math.round(phase * 100);
+        if (idx == Settings.Voices.ordinal())
+            return voices;
         throw new InvalidParameterException();
     }
 
@@ -81,6 +115,8 @@ public class Chorus implements TimeFX, FX.RTFX {
             sync = value > 0;
         } else if (idx == Settings.Phase.ordinal()) {
             phase = value / 100f;
+        } else if (idx == Settings.Voices.ordinal()) {
+            setVoices(value);
         } else {
             throw new InvalidParameterException();
         }
@@ -92,8 +128,26 @@ public class Chorus implements TimeFX, FX.RTFX {
         this.depth = depth;
     }
 
+    /** Ensemble voices read linearly: at half the cost of Hermite, and the voices sit at
+     * different fractional positions, so their averaged high-end loss is far milder. */
+    public void setVoices(int count) {
+        voices = Math.max(1, Math.min(MAX_VOICES, count));
+        DelayLine.Interpolation type = voices > 1 ? DelayLine.Interpolation.LINEAR : DelayLine.Interpolation.HERMITE;
+        leftDsp.line.setInterpolation(type);
+        rightDsp.line.setInterpolation(type);
+    }
+
     @Override
     public void process(float[] left, float[] right) {
+        final int n = voices;
+        if (n > 1) {
+            leftDsp.ensemble(left, n, 0f);
+            if (right != null)
+                rightDsp.ensemble(right, n, phase);
+            lfoPhase += rate * N_FRAMES / SAMPLE_RATE;
+            lfoPhase -= (int) lfoPhase;
+            return;
+        }
         leftDsp.processReplace(left);
         rightDsp.processReplace(right);
     }
@@ -102,15 +156,17 @@ public class Chorus implements TimeFX, FX.RTFX {
         private int lfocount;
         @Setter
         float delay = depth * 0.001f;
-        float[] workArea = new float[N_FRAMES];
+        final DelayLine line = new DelayLine(Math.max(N_FRAMES,
+                (int) ((ENSEMBLE_DELAY + 0.002f) * SAMPLE_RATE) + 4), DelayLine.Interpolation.HERMITE);
         float range = 0.5f;
         float delayTime;
-        int rovepos;
         float lastdelay;
 
         // lowpass filter for feedback
         float fbFilterState = 0f;
         final float fbCut = 0.25f; // 0..1
+        // anti-denormal offset, sign flipped every block
+        float dc = Denormal.OFFSET;
 
         void goFigure() {
             if (rate > 0.01 && range > 0) {
@@ -123,7 +179,7 @@ public class Chorus implements TimeFX, FX.RTFX {
                 if (r > PI2) {
                     r -= PI2;
                 }
-                r = delay * range * (float) Math.sin(r);
+                r = delay * range * FastMath.sin(r);
                 delayTime = delay + r;
             } else {
                 lfocount = 0;
@@ -136,66 +192,101 @@ public class Chorus implements TimeFX, FX.RTFX {
             float delaySamples = delayTime * SAMPLE_RATE;
             float ldelay = lastdelay;
 
-            float[] work = workArea;
-            int rnlen = work.length;
-            int pos = rovepos;
+            final DelayLine work = line;
             float delta = (delaySamples - ldelay) / N_FRAMES;
+            final float offset = dc = -dc;
             float fb = feedback;
 
-            float r, s, a, b, o;
-            int ri;
             for (int i = 0; i < N_FRAMES; i++) {
-                r = pos - (ldelay + 2) + rnlen;
-                ri = (int) r;
-                s = r - ri;
-                a = work[ri % rnlen];
-                b = work[(ri + 1) % rnlen];
-                o = a * (1 - s) + b * s;
-
-                float in = buf[i];
+                float o = work.read(ldelay + 2);
                 float fbSample = o * fb;
                 fbFilterState = fbFilterState + fbCut * (fbSample - fbFilterState);
 
-                work[pos] = in + fbFilterState;
+                work.write(buf[i] + fbFilterState + offset);
                 buf[i] = o;
-                pos = (pos + 1) % rnlen;
                 ldelay += delta;
             }
-
-            rovepos = pos;
             lastdelay = delaySamples;
         }
 
+        /** interpolated wavetable sine, phase in cycles (any positive value) */
+        private float lookup(float cycles) {
+            float p = (cycles - (int) cycles) * TABLE;
+            int idx = (int) p;
+            float a = SINE[idx];
+            return a + (SINE[idx + 1] - a) * (p - idx);
+        }
+
+        /**
+         * Voices at evenly spread LFO phases around {@link #ENSEMBLE_DELAY}, averaged.
+         * The shortest voice delay is far longer than a chunk of the block, so each chunk
+         * is read one voice and one control block at a time (a linear ramp of the sweep, see
+         * DelayLine.readAdd) before its samples are written back with feedback.
+         * @param offset channel LFO phase, 0 to 1 */
+        void ensemble(float[] buf, int n, float offset) {
+            final float[] d = sweep;
+            final float center = ENSEMBLE_DELAY * SAMPLE_RATE;
+            final float swing = delay * range * SAMPLE_RATE;
+            final float inc = rate * Smoother.CONTROL / SAMPLE_RATE;
+            for (int v = 0; v < n; v++) {
+                // table lookups at control block edges, per sample linear in between
+                float p = lfoPhase + offset + (float) v / n;
+                float from = center + swing * lookup(p);
+                for (int start = v * N_FRAMES, end = start + N_FRAMES; start < end; start += Smoother.CONTROL) {
+                    p += inc;
+                    final float to = center + swing * lookup(p);
+                    final float step = (to - from) / Smoother.CONTROL;
+                    final int len = Math.min(Smoother.CONTROL, end - start);
+                    for (int i = 0; i < len; i++)
+                        d[start + i] = from + step * i;
+                    from = to;
+                }
+            }
+
+            final DelayLine work = line;
+            final float[] wet = mix;
+            final float norm = 1f / n;
+            final float offsetDc = dc = -dc;
+            final float fb = feedback;
+            final int chunk = Math.max(1, Math.min(N_FRAMES, (int) (center - Math.abs(swing)) - 2));
+            for (int start = 0; start < N_FRAMES; start += chunk) {
+                final int len = Math.min(chunk, N_FRAMES - start);
+                Arrays.fill(wet, 0, len, 0f);
+                // per control block: a linear ramp, so mostly one integer delay and a contiguous read
+                for (int s = start, next; s < start + len; s = next) {
+                    next = Math.min(start + len, (s / Smoother.CONTROL + 1) * Smoother.CONTROL);
+                    for (int v = 0; v < n; v++)
+                        work.readAdd(d, v * N_FRAMES + s, wet, s - start, next - s);
+                }
+                for (int i = 0; i < len; i++) {
+                    float o = wet[i] * norm;
+                    fbFilterState = fbFilterState + fbCut * (o * fb - fbFilterState);
+                    work.write(buf[start + i] + fbFilterState + offsetDc);
+                    buf[start + i] = o;
+                }
+            }
+        }
+
         @SuppressWarnings("unused")
         public void processAdd(float[] buf) {
             goFigure();
             float delaySamples = delayTime * SAMPLE_RATE;
             float ldelay = lastdelay;
 
-            int rnlen = workArea.length;
-            int pos = rovepos;
+            final DelayLine work = line;
             float delta = (delaySamples - ldelay) / N_FRAMES;
+            final float offset = dc = -dc;
 
-            float r, s, a, b, o;
-            int ri;
             for (int i = 0; i < N_FRAMES; i++) {
-                r = pos - (ldelay + 2) + rnlen;
-                ri = (int) r;
-                s = r - ri;
-                a = workArea[ri % rnlen];
-                b = workArea[(ri + 1) % rnlen];
-                o = a * (1 - s) + b * s;
-
+                float o = work.read(ldelay + 2);
                 float in = buf[i];
                 float fbSample = o * feedback;
                 fbFilterState = fbFilterState + fbCut * (fbSample - fbFilterState);
-                workArea[pos] = in + fbFilterState;
+                work.write(in + fbFilterState + offset);
 
                 buf[i] = in + o;
-                pos = (pos + 1) % rnlen;
                 ldelay += delta;
             }
-            rovepos = pos;
             lastdelay = delaySamples;
         }
     }
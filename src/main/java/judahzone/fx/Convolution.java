@@ -15,7 +15,7 @@ import judahzone.api.IRProvider;
 import judahzone.util.RTLogger;
 import lombok.Getter;
 
-public abstract class Convolution implements FX {
+public abstract class Convolution implements FX, Discrete {
 
     public enum Settings { Cabinet, Wet }
 
@@ -42,6 +42,11 @@ public abstract class Convolution implements FX {
         return names;
     }
 
+    @Override
+    public boolean isDiscrete(int idx) {
+        return idx == Settings.Cabinet.ordinal();
+    }
+
     @Override
     public void process(float[] left, float[] right) {
         // base class no-op
@@ -49,7 +54,7 @@ public abstract class Convolution implements FX {
 
     // ======================================================================
     /** Wrapper around 2 Mono Convolvers */
-    public static class Stereo extends Convolution implements FX.RTFX {
+    public static class Stereo extends Convolution implements OutOfPlace {
 
         private final Mono leftIR = new Mono();
         private final Mono rightIR = new Mono();
@@ -61,15 +66,20 @@ public abstract class Convolution implements FX {
         }
 
         @Override
-        public void process(float[] left, float[] right) {
-            if (left != null) {
-                leftIR.process(left);
+        public void process(float[] inL, float[] inR, float[] outL, float[] outR) {
+            if (inL != null) {
+                leftIR.convolveAdd(inL, outL);
             }
-            if (right != null) {
-                rightIR.process(right);
+            if (inR != null) {
+                rightIR.convolveAdd(inR, outR);
             }
         }
 
+        @Override
+        public void process(float[] left, float[] right) {
+            process(left, right, left, right);
+        }
+
         @Override
         public int get(int idx) {
             return leftIR.get(idx);
@@ -86,13 +96,13 @@ public abstract class Convolution implements FX {
         protected final int overlapSize = FFT_SIZE - N_FRAMES;
 
         protected float[] irFreq = new float[FFT_SIZE * 2];
+        // spectrum picked by set(), taken up by the RT thread at its next block
+        private volatile float[] selected = irFreq;
         protected float wet = 0.9f;
         protected int cabinet = 0;
 
         protected final float[] fftInOut = new float[FFT_SIZE * 2];
         protected final float[] overlap = new float[overlapSize];
-        protected final float[] work0 = new float[N_FRAMES];
-        protected final float[] work1 = new float[N_FRAMES];
 
         @Override
         public void reset() {
@@ -114,8 +124,7 @@ public abstract class Convolution implements FX {
                     throw new InvalidParameterException("Cabinet index out of range: " + value);
                 }
                 cabinet = value;
-                irFreq = db.get(cabinet).irFreq();
-                reset();
+                selected = db.get(cabinet).irFreq();
                 return;
             }
 
@@ -150,60 +159,46 @@ public abstract class Convolution implements FX {
 
         /** Convolve Add and make stereo (caller supplies mono and stereo arrays) */
         public void monoToStereo(float[] mono, float[] stereo) {
-        	if (wet <= 0f) {
+            if (wet <= 0f) {
                 int len = Math.min(N_FRAMES, Math.min(mono.length, stereo.length));
                 System.arraycopy(mono, 0, stereo, 0, len);
                 return;
             }
-            float dryGain = 1.0f - wet;
-            float wetGain = wet;
-
-            System.arraycopy(mono, 0, work0, 0, N_FRAMES);
-
-            Arrays.fill(fftInOut, 0f);
-            System.arraycopy(overlap, 0, fftInOut, 0, overlapSize);
-            System.arraycopy(work0, 0, fftInOut, overlapSize, N_FRAMES);
-
-            System.arraycopy(fftInOut, N_FRAMES, overlap, 0, overlapSize);
-
-            fft.forwardTransform(fftInOut);
-
-            for (int k = 0, idx = 0; k < FFT_SIZE; k++, idx += 2) {
-                float a = fftInOut[idx];
-                float b = fftInOut[idx + 1];
-                float c = irFreq[idx];
-                float d = irFreq[idx + 1];
-                float real = a * c - b * d;
-                float imag = a * d + b * c;
-                fftInOut[idx] = real;
-                fftInOut[idx + 1] = imag;
+            transform(mono);
+            final float dryGain = 1.0f - wet;
+            final float wetGain = wet;
+            if (stereo == null) {
+                mix(mono, mono, dryGain, wetGain);
+                return;
             }
-
-            ifft.backwardsTransform(fftInOut);
-
             for (int i = 0; i < N_FRAMES; i++) {
-                float proc = fftInOut[overlapSize + i];
-                float in = work0[i];
-                float mixed = dryGain * in + wetGain * proc;
-                work1[i] = mixed;
-            }
-
-            System.arraycopy(work1, 0, mono, 0, N_FRAMES);
-            if (stereo != null) {
-                System.arraycopy(work1, 0, stereo, 0, N_FRAMES);
+                float mixed = dryGain * mono[i] + wetGain * fftInOut[overlapSize + i];
+                mono[i] = mixed;
+                stereo[i] = mixed;
             }
         }
 
         /** Realtime mono convolve-add */
         public void process(float[] mono) {
-            final float dryGain = 1.0f - wet;
-            final float wetGain = wet;
+            convolveAdd(mono, mono);
+        }
 
-            System.arraycopy(mono, 0, work0, 0, N_FRAMES);
+        /** Convolve-add in to out, out may be in. */
+        public void convolveAdd(float[] in, float[] out) {
+            transform(in);
+            mix(in, out, 1.0f - wet, wet);
+        }
 
-            Arrays.fill(fftInOut, 0f);
+        // overlap-save: block of in after the saved tail, times the IR spectrum, result in fftInOut
+        private void transform(float[] in) {
+            final float[] ir = selected;
+            if (ir != irFreq) { // new cabinet, the old tail goes with the old spectrum
+                irFreq = ir;
+                Arrays.fill(overlap, 0f);
+            }
+            Arrays.fill(fftInOut, FFT_SIZE, FFT_SIZE * 2, 0f);
             System.arraycopy(overlap, 0, fftInOut, 0, overlapSize);
-            System.arraycopy(work0, 0, fftInOut, overlapSize, N_FRAMES);
+            System.arraycopy(in, 0, fftInOut, overlapSize, N_FRAMES);
 
             System.arraycopy(fftInOut, N_FRAMES, overlap, 0, overlapSize);
 
@@ -221,14 +216,12 @@ public abstract class Convolution implements FX {
             }
 
             ifft.backwardsTransform(fftInOut);
+        }
 
-            for (int i = 0; i < N_FRAMES; i++) {
-                float proc = fftInOut[overlapSize + i];
-                float in = work0[i];
-                work1[i] = dryGain * in + wetGain * proc;
-            }
-
-            System.arraycopy(work1, 0, mono, 0, N_FRAMES);
+        // per index read before write, so in and out may be the same array
+        private void mix(float[] in, float[] out, float dryGain, float wetGain) {
+            for (int i = 0; i < N_FRAMES; i++)
+                out[i] = dryGain * in[i] + wetGain * fftInOut[overlapSize + i];
         }
 
         @Override
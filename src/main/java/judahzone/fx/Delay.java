@@ -1,33 +1,40 @@
 package judahzone.fx;
 
 import java.security.InvalidParameterException;
-import java.util.Arrays;
 
-import judahzone.api.FX.RTFX;
 import judahzone.api.TimeFX;
 import judahzone.util.Constants;
 import lombok.Getter;
 import lombok.Setter;
 
 /**
- * Two Identical Mono Delays.
- * Delay time and feedback are interpolated over the period of one buffer.
- * Some smoothing applied.
+ * Two Identical Mono Delays, or up to {@link #MAX_TAPS} taps read from the same two lines
+ * (multi-tap and ping-pong, see {@link Mode}): memory and write cost do not grow with taps.
+ * Delay time is ramped at control rate, see Smoother.
  *
  * Ported from the FloatBuffer-based Effect implementation to float[] FX API.
  * All logic and behavior are preserved as closely as possible.
  */
-public class Delay implements TimeFX, RTFX {
+public class Delay implements TimeFX, LazyReset, Discrete {
 
     public enum Settings {
-        DelayTime, Feedback, Type, Sync
+        DelayTime, Feedback, Type, Sync, Mode
     }
 
+    /** Classic: one echo per channel.  MultiTap: taps per channel.  PingPong: taps cross-feed L/R. */
+    public enum Mode {
+        Classic, MultiTap, PingPong
+    }
+
+    public static final int MAX_TAPS = 8;
+    /** in seconds */
+    public static final float MIN_TAP = 0.002f;
+
     // in seconds
     public static final float MAX_DELAY = 3.75f;
     public static final float MIN_DELAY = 0.15f;
     public static final float DEFAULT_TIME = .4f;
-    static final float THRESHOLD = 0.00001f; // de-normalize
+    private static final Mode[] MODES = Mode.values();
 
     @Setter @Getter
     boolean sync;
@@ -42,17 +49,37 @@ public class Delay implements TimeFX, RTFX {
     private boolean slapback;
     @Setter @Getter
     String type = TYPE[0];
+    @Getter
+    private volatile Mode mode = Mode.Classic;
+    private final float maxDelay;
+    private final Tap[] taps = new Tap[MAX_TAPS];
+    @Getter
+    private volatile int tapCount = 2;
+    // per-block tap state, RT thread
+    private final float[] tapDelay = new float[MAX_TAPS];
+    private final float[] tapDelta = new float[MAX_TAPS];
+    private final float[] tapL = new float[MAX_TAPS];
+    private final float[] tapR = new float[MAX_TAPS];
+    private final float[] tapFb = new float[MAX_TAPS];
+    private float dc = Denormal.OFFSET;
+    // lines reset but not zeroed yet, see LazyReset
+    private volatile boolean stale;
 
     public Delay() {
         this(MAX_DELAY);
     }
 
     public Delay(float maxdelay) {
+        maxDelay = maxdelay;
         int delayBufSize = (int) (maxdelay * SAMPLE_RATE) + 10;
         left = new VariableDelayOp(delayBufSize);
         right = new VariableDelayOp(delayBufSize);
+        for (int i = 0; i < MAX_TAPS; i++)
+            taps[i] = new Tap(Math.min(maxdelay, DEFAULT_TIME * (i + 1) * 0.5f), (float) Math.pow(0.7, i),
+                    i % 2 == 0 ? -0.5f : 0.5f, i == 0 ? feedback : 0f);
         setDelayTime(DEFAULT_TIME);
         reset();
+        clear(Integer.MAX_VALUE);
     }
 
     @Override
@@ -65,6 +92,12 @@ public class Delay implements TimeFX, RTFX {
         return Delay.class.getSimpleName();
     }
 
+    @Override
+    public boolean isDiscrete(int idx) {
+        return idx == Settings.Type.ordinal() || idx == Settings.Sync.ordinal()
+                || idx == Settings.Mode.ordinal();
+    }
+
     @Override
     public int get(int idx) {
         if (idx == Settings.DelayTime.ordinal())
@@ -75,6 +108,8 @@ public class Delay implements TimeFX, RTFX {
             return TimeFX.indexOf(type);
         if (idx == Settings.Sync.ordinal())
             return sync ? 1 : 0;
+        if (idx == Settings.Mode.ordinal())
+            return mode.ordinal();
         throw new InvalidParameterException();
     }
 
@@ -88,6 +123,8 @@ public class Delay implements TimeFX, RTFX {
             type = TimeFX.TYPE[value];
         } else if (idx == Settings.Sync.ordinal()) {
             sync = value > 0;
+        } else if (idx == Settings.Mode.ordinal() && value < MODES.length) {
+            setMode(MODES[value]);
         } else {
             throw new InvalidParameterException("" + idx);
         }
@@ -110,15 +147,43 @@ public class Delay implements TimeFX, RTFX {
         this.feedback = feedback;
     }
 
+    public void setMode(Mode mode) {
+        if (this.mode == mode)
+            return;
+        // the taps read the same two lines: switch without touching them, this may run
+        // on the RT thread (a modulation route) or race it (GUI)
+        this.mode = mode;
+    }
+
+    /** @param count active taps in MultiTap and PingPong modes, 1 to {@link #MAX_TAPS} */
+    public void setTapCount(int count) {
+        if (count < 1 || count > MAX_TAPS)
+            throw new InvalidParameterException("taps " + count);
+        tapCount = count;
+    }
+
+    public Tap getTap(int idx) {
+        if (idx < 0 || idx >= MAX_TAPS)
+            throw new InvalidParameterException("tap " + idx);
+        return taps[idx];
+    }
+
+    /** O(1), the lines are zeroed by {@link #clear(int)} */
     @Override
     public void reset() {
-        if (left.workArea != null)
-            Arrays.fill(left.workArea, 0);
-        if (right.workArea != null)
-            Arrays.fill(right.workArea, 0);
-        // initialize internal delay state to the current target so we don't jump
+        // start at the current target so we don't jump
         left.resetState(calculated);
         right.resetState(calculated);
+        for (Tap t : taps)
+            t.delay.snap();
+        stale = true;
+    }
+
+    @Override
+    public boolean clear(int samples) {
+        if (stale && left.line.wipe(samples) & right.line.wipe(samples))
+            stale = false;
+        return !stale;
     }
 
     /**
@@ -140,6 +205,14 @@ public class Delay implements TimeFX, RTFX {
             throw new IllegalArgumentException("right buffer too small, need at least " + N_FRAMES);
         }
 
+        if (stale) // ahead of this block's writes, the rest reads as silence
+            clear(Math.max(WIPE, N_FRAMES));
+
+        if (mode != Mode.Classic) {
+            multiTap(leftBuffer, rightBuffer);
+            return;
+        }
+
         left.process(leftBuffer);
 
         if (slapback) { // not implemented further, same as original
@@ -155,122 +228,150 @@ public class Delay implements TimeFX, RTFX {
     }
 
     /**
-     * Per-sample exponential smoothing of the read delay avoids abrupt jumps
+     * Delay time is ramped at control rate (Smoother) and interpolated linearly
+     * per sample inside each control block, avoiding abrupt jumps
      * when the target delay changes (short or long).
-     *
-     * Not perfect but better; direct port from the FloatBuffer version.
      */
     private class VariableDelayOp {
-        float[] workArea;
-        int rovepos = 0;
-        // current smoothed delay (in samples). Initialized in resetState().
-        float lastdelay;
-        // smoothing time constant: number of samples over which delay moves ~close to target.
-        private static final int SMOOTHING_SAMPLES = 64;
-        // derived smoothing coefficient (per-sample)
-        private final float smoothAlpha = 1.0f / Math.max(1, SMOOTHING_SAMPLES);
+        // ramp length in control blocks (256 samples)
+        private static final int SMOOTHING_TICKS = 8;
+        final DelayLine line;
+        // smoothed delay (in samples). Initialized in resetState().
+        final Smoother delay = new Smoother(0f, SMOOTHING_TICKS, false);
+        // anti-denormal offset, sign flipped every block
+        float dc = Denormal.OFFSET;
 
         VariableDelayOp(int bufSize) {
-            this.workArea = new float[bufSize];
-            this.rovepos = 0;
-            this.lastdelay = 0f;
+            line = new DelayLine(bufSize, DelayLine.Interpolation.HERMITE);
         }
 
         void resetState(float initDelaySamples) {
+            line.resetLater();
             // initialize smoothing state to the current (target) delay to avoid jumps
-            this.lastdelay = initDelaySamples;
-            this.rovepos = 0;
+            delay.snap(initDelaySamples);
         }
 
         void process(float[] in) {
-            float ldelay = lastdelay; // smoothed delay (samples)
-            float fb = feedback;
-            float[] work = workArea;
-            int rnlen = work.length;
-            int pos = rovepos;
-
-            // update ldelay per-sample with exponential smoothing towards
-            // 'calculated' (the target delay in samples).
-            float target = calculated;
-
-            float r, s, a, b, o;
-            int ri;
-            float scratch;
-
-            for (int i = 0; i < N_FRAMES; i++) {
-                // smooth one sample towards target delay
-                ldelay += (target - ldelay) * smoothAlpha;
-
-                // compute read index for this (smoothed) delay
-                r = pos - (ldelay + 2f) + rnlen;
-                ri = (int) r;
-                s = r - ri;
-
-                // safe circular access (ri % rnlen)
-                int idxA = ri % rnlen;
-                if (idxA < 0) idxA += rnlen;
-                int idxB = idxA + 1;
-                if (idxB >= rnlen) idxB -= rnlen;
-
-                a = work[idxA];
-                b = work[idxB];
-                o = a * (1 - s) + b * s;
-
-                float inSample = in[i];
-
-                // write feedback into buffer
-                scratch = inSample + o;
-                if (Math.abs(scratch) < THRESHOLD) // denormalize
-                    scratch = 0f;
-                work[pos] = scratch * fb;
-
-                // write output (original wrote scratch back)
-                in[i] = scratch;
-
-                pos++;
-                if (pos >= rnlen) pos = 0;
+            final float fb = feedback;
+            final DelayLine work = line;
+            delay.set(calculated);
+            final float offset = dc = -dc;
+
+            for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+                delay.tick();
+                int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+                float ldelay = delay.last();
+                float delta = (delay.value() - ldelay) / (end - start);
+
+                for (int i = start; i < end; i++) {
+                    ldelay += delta;
+                    float scratch = in[i] + work.read(ldelay + 2f);
+                    // write feedback into buffer
+                    work.write((scratch + offset) * fb);
+                    // write output (original wrote scratch back)
+                    in[i] = scratch;
+                }
             }
-            // store smoothed delay and position for next block
-            rovepos = pos;
-            lastdelay = ldelay;
         }
 
         void slapback(float[] in) {
-            float ldelay = lastdelay;
-            float fb = feedback;
-            int rnlen = workArea.length;
-            int pos = rovepos;
-            float target = calculated;
-
-            float r, s, a, b, o;
-            int ri;
-
-            for (int i = 0; i < N_FRAMES; i++) {
-                ldelay += (target - ldelay) * smoothAlpha;
-
-                r = pos - (ldelay + 2f) + rnlen;
-                ri = (int) r;
-                s = r - ri;
-
-                int idxA = ri % rnlen;
-                if (idxA < 0) idxA += rnlen;
-                int idxB = idxA + 1;
-                if (idxB >= rnlen) idxB -= rnlen;
-
-                a = workArea[idxA];
-                b = workArea[idxB];
-                o = a * (1 - s) + b * s;
-
-                float outSample = o;
-                workArea[pos] = in[i] + outSample * fb;
-                in[i] = outSample;
-
-                pos++;
-                if (pos >= rnlen) pos = 0;
+            final float fb = feedback;
+            final DelayLine work = line;
+            delay.set(calculated);
+            final float offset = dc = -dc;
+
+            for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+                delay.tick();
+                int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+                float ldelay = delay.last();
+                float delta = (delay.value() - ldelay) / (end - start);
+
+                for (int i = start; i < end; i++) {
+                    ldelay += delta;
+                    float outSample = work.read(ldelay + 2f);
+                    work.write(in[i] + offset + outSample * fb);
+                    in[i] = outSample;
+                }
             }
+        }
+    }
 
-            rovepos = pos;
-            lastdelay = ldelay;
+    /**
+     * All taps read both channel lines, one write per channel per sample.  The summed tap
+     * feedback is normalized to at most 1 so any tap setting stays stable.  PingPong feeds
+     * (L+R)/2 into the left line and each line's taps into the other line.
+     */
+    private void multiTap(float[] inL, float[] inR) {
+        final int n = tapCount;
+        final boolean stereo = inR != null;
+        final boolean pingpong = stereo && mode == Mode.PingPong;
+        final DelayLine l = left.line;
+        final DelayLine r = right.line;
+        final float[] d = tapDelay;
+        final float[] dd = tapDelta;
+        final float[] gl = tapL;
+        final float[] gr = tapR;
+        final float[] fb = tapFb;
+        final float offset = dc = -dc;
+
+        float loop = 0;
+        for (int k = 0; k < n; k++) {
+            Tap t = taps[k];
+            float pan = t.pan;
+            gl[k] = t.gain * (pan > 0 ? 1 - pan : 1); // balance law, unity at center
+            gr[k] = t.gain * (pan < 0 ? 1 + pan : 1);
+            fb[k] = t.feedback;
+            loop += fb[k];
+        }
+        if (loop > 1)
+            for (int k = 0; k < n; k++)
+                fb[k] /= loop;
+
+        for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+            final int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+            for (int k = 0; k < n; k++) {
+                Smoother s = taps[k].delay;
+                s.tick();
+                d[k] = s.last();
+                dd[k] = (s.value() - d[k]) / (end - start);
+            }
+            for (int i = start; i < end; i++) {
+                float outL = 0, outR = 0, fbL = 0, fbR = 0;
+                if (stereo) {
+                    for (int k = 0; k < n; k++) {
+                        float dk = d[k] += dd[k];
+                        float xL = l.read(dk);
+                        float xR = r.read(dk);
+                        outL += gl[k] * xL;
+                        outR += gr[k] * xR;
+                        fbL += fb[k] * xL;
+                        fbR += fb[k] * xR;
+                    }
+                } else {
+                    for (int k = 0; k < n; k++) {
+                        float dk = d[k] += dd[k];
+                        float xL = l.read(dk);
+                        outL += (gl[k] + gr[k]) * 0.5f * xL;
+                        fbL += fb[k] * xL;
+                    }
+                }
+
+                final float dryL = inL[i];
+                if (pingpong) {
+                    final float dryR = inR[i];
+                    l.write((dryL + dryR) * 0.5f + fbR + offset);
+                    r.write(fbL + offset);
+                    inR[i] = dryR + outR;
+                } else {
+                    l.write(dryL + fbL + offset);
+                    if (stereo) {
+                        final float dryR = inR[i];
+                        r.write(dryR + fbR + offset);
+                        inR[i] = dryR + outR;
+                    }
+                }
+                inL[i] = dryL + outL;
+            }
         }
     }
 
@@ -278,5 +379,58 @@ public class Delay implements TimeFX, RTFX {
     public void sync(float unit) {
         float msec = 0.001f * (unit + unit * TimeFX.indexOf(type));
         setDelayTime(2 * msec);
+        for (Tap t : taps)
+            if (t.sync)
+                t.setTime(Math.min(maxDelay, 2 * 0.001f * (unit + unit * TimeFX.indexOf(t.type))));
+    }
+
+    /** One read of the shared lines: time, level, balance and feedback into the lines. */
+    public final class Tap {
+        /** seconds */
+        @Getter private volatile float time;
+        /** 0 to 1 */
+        @Getter private volatile float gain;
+        /** -1 (left) to 1 (right) */
+        @Getter private volatile float pan;
+        /** 0 to 1 */
+        @Getter private volatile float feedback;
+        /** follow the tempo with its own note value, see {@link #sync(float)} */
+        @Getter @Setter private boolean sync;
+        @Getter @Setter private String type = TYPE[0];
+        private final Smoother delay = new Smoother(0f, VariableDelayOp.SMOOTHING_TICKS, false);
+
+        private Tap(float time, float gain, float pan, float feedback) {
+            setTime(time);
+            delay.snap();
+            setGain(gain);
+            setPan(pan);
+            setFeedback(feedback);
+        }
+
+        /** @param seconds {@link #MIN_TAP} up to the maximum delay */
+        public void setTime(float seconds) {
+            if (seconds < MIN_TAP || seconds > maxDelay)
+                throw new IllegalArgumentException("" + seconds);
+            time = seconds;
+            delay.set(seconds * SAMPLE_RATE);
+        }
+
+        public void setGain(float gain) {
+            if (gain < 0 || gain > 1)
+                throw new IllegalArgumentException("" + gain);
+            this.gain = gain;
+        }
+
+        public void setPan(float pan) {
+            if (pan < -1 || pan > 1)
+                throw new IllegalArgumentException("" + pan);
+            this.pan = pan;
+        }
+
+        public void setFeedback(float feedback) {
+            if (feedback < 0 || feedback > 1)
+                throw new IllegalArgumentException("" + feedback);
+            this.feedback = feedback;
+        }
     }
 }
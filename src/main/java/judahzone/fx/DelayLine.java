@@ -0,0 +1,200 @@
+package judahzone.fx;
+
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Single-writer ring buffer with power-of-two capacity: every index is a bitmask,
+ * no modulo or wrap branches on the per-sample path.
+ *
+ * Delays are measured from the next write: read before write in the same sample and
+ * read(1) is the previous input.  Fractional reads interpolate per {@link Interpolation};
+ * integer spans ({@link #write(float[], int, int)}, {@link #read(int, float[], int, int)})
+ * are copied in at most two contiguous pieces, split at the wrap point.
+ */
+public final class DelayLine {
+
+    public enum Interpolation {
+        /** 2 point, cheapest, dulls highs when modulated */
+        LINEAR,
+        /** 4 point cubic Hermite, needs delay &gt;= 2 */
+        HERMITE,
+        /** first order allpass, flat magnitude, needs delay &gt;= 2; one reader per line, slowly varying delay only */
+        ALLPASS
+    }
+
+    private final float[] buffer;
+    private final int mask;
+    private int pos;
+    // zeroed or written since the last reset below this index, stale (read as 0) above, see resetLater()
+    private int wiped;
+    private float apLast; // allpass interpolator state
+    @Getter @Setter private Interpolation interpolation;
+
+    /** @param maxDelay longest delay in samples that will be read */
+    public DelayLine(int maxDelay) {
+        this(maxDelay, Interpolation.LINEAR);
+    }
+
+    public DelayLine(int maxDelay, Interpolation interpolation) {
+        int capacity = Integer.highestOneBit(Math.max(maxDelay + 3, 4) * 2 - 1);
+        buffer = new float[capacity];
+        mask = capacity - 1;
+        wiped = capacity;
+        this.interpolation = interpolation;
+    }
+
+    /** @return samples held, a power of two */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public void write(float x) {
+        buffer[pos] = x;
+        pos = (pos + 1) & mask;
+    }
+
+    /** @return the input of 'delay' samples ago */
+    public float tap(int delay) {
+        return at(buffer, (pos - delay) & mask, wiped);
+    }
+
+    // stale samples of a line being wiped read as silence, one compare while clean
+    private static float at(float[] buf, int idx, int wiped) {
+        return idx < wiped ? buf[idx] : 0f;
+    }
+
+    /** @param delay fractional delay in samples, 1 or more (2 or more for HERMITE and ALLPASS) */
+    public float read(float delay) {
+        final int i = (int) delay;
+        final float f = delay - i;
+        final int p = pos - i;
+        final float[] buf = buffer;
+        final int m = mask;
+        final int w = wiped;
+        final float x0 = at(buf, p & m, w);
+        final float x1 = at(buf, (p - 1) & m, w);
+        switch (interpolation) {
+            case HERMITE: {
+                final float xm1 = at(buf, (p + 1) & m, w);
+                final float x2 = at(buf, (p - 2) & m, w);
+                final float c1 = 0.5f * (x1 - xm1);
+                final float c2 = xm1 - 2.5f * x0 + 2f * x1 - 0.5f * x2;
+                final float c3 = 0.5f * (x2 - xm1) + 1.5f * (x0 - x1);
+                return ((c3 * f + c2) * f + c1) * f + x0;
+            }
+            case ALLPASS: {
+                // integer part N and fraction in [0.5, 1.5), where the allpass is well behaved
+                final int n = f < 0.5f ? p + 1 : p;
+                final float frac = f < 0.5f ? f + 1f : f;
+                final float a = (1f - frac) / (1f + frac);
+                return apLast = a * (at(buf, n & m, w) - apLast) + at(buf, (n - 1) & m, w);
+            }
+            default:
+                return x0 + (x1 - x0) * f;
+        }
+    }
+
+    /**
+     * Modulated read of a span that has not been written yet: for each k from dstOff, adds
+     * to dst[k] the sample 'delays[off + k - dstOff]' behind the k-th upcoming write, as if
+     * read(delay) had been called sample by sample in between writes.  Interpolation is chosen
+     * once (ALLPASS falls back to HERMITE, its state belongs to the per-sample reader).  A
+     * LINEAR span whose delays share one integer part reads contiguous samples, a loop C2
+     * vectorizes; any other span is gathered index by index.
+     * @param delays each at least k + 2 for its write k, monotonic over the span (a linear
+     *        ramp, say), the span must already be written */
+    public void readAdd(float[] delays, int off, float[] dst, int dstOff, int len) {
+        final float[] buf = buffer;
+        final int m = mask;
+        final int base = pos + dstOff;
+        final int skew = off - dstOff;
+        final int end = dstOff + len;
+        if (interpolation == Interpolation.LINEAR) {
+            final int whole = (int) delays[off];
+            final int from = (base - whole - 1) & m; // x1 of the first write, x0 one later
+            if (whole == (int) delays[off + len - 1] && from + len < buf.length) {
+                final float w = whole;
+                final int shift = from - dstOff;
+                for (int k = dstOff; k < end; k++) {
+                    final float x0 = buf[shift + 1 + k];
+                    dst[k] += x0 + (buf[shift + k] - x0) * (delays[skew + k] - w);
+                }
+                return;
+            }
+            for (int k = dstOff; k < end; k++) {
+                final float delay = delays[skew + k];
+                final int i = (int) delay;
+                final float f = delay - i;
+                final int p = pos + k - i;
+                final float x0 = buf[p & m];
+                dst[k] += x0 + (buf[(p - 1) & m] - x0) * f;
+            }
+            return;
+        }
+        for (int k = dstOff; k < end; k++) {
+            final float delay = delays[skew + k];
+            final int i = (int) delay;
+            final float f = delay - i;
+            final int p = pos + k - i;
+            final float xm1 = buf[(p + 1) & m];
+            final float x0 = buf[p & m];
+            final float x1 = buf[(p - 1) & m];
+            final float x2 = buf[(p - 2) & m];
+            final float c1 = 0.5f * (x1 - xm1);
+            final float c2 = xm1 - 2.5f * x0 + 2f * x1 - 0.5f * x2;
+            final float c3 = 0.5f * (x2 - xm1) + 1.5f * (x0 - x1);
+            dst[k] += ((c3 * f + c2) * f + c1) * f + x0;
+        }
+    }
+
+    /** append len samples of src */
+    public void write(float[] src, int off, int len) {
+        final int first = Math.min(len, buffer.length - pos);
+        System.arraycopy(src, off, buffer, pos, first);
+        System.arraycopy(src, off + first, buffer, 0, len - first);
+        pos = (pos + len) & mask;
+    }
+
+    /**
+     * Copy len samples starting 'delay' samples back, oldest first.
+     * @param delay at least len, so the span was written before this call */
+    public void read(int delay, float[] dst, int off, int len) {
+        final int start = (pos - delay) & mask;
+        final int first = Math.min(len, buffer.length - start);
+        System.arraycopy(buffer, start, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, len - first);
+    }
+
+    public void reset() {
+        Arrays.fill(buffer, 0f);
+        wiped = buffer.length;
+        pos = 0;
+        apLast = 0;
+    }
+
+    /**
+     * O(1) reset.  Until {@link #wipe(int)} reports the line clean, tap() and read(float)
+     * return silence for what is not wiped yet; the span reads and readAdd() need a clean
+     * line.  Wipe at least as many samples per cycle as are written, so writes never pass
+     * the wiped region (they start at 0, as the wipe does).
+     */
+    public void resetLater() {
+        wiped = 0;
+        pos = 0;
+        apLast = 0;
+    }
+
+    /**
+     * Zero up to 'samples' more of a line reset with {@link #resetLater()}.
+     * @return true when the whole line is clean */
+    public boolean wipe(int samples) {
+        final int to = (int) Math.min((long) wiped + samples, buffer.length);
+        Arrays.fill(buffer, wiped, to, 0f);
+        wiped = to;
+        return to == buffer.length;
+    }
+
+}
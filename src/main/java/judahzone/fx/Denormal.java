@@ -0,0 +1,22 @@
+package judahzone.fx;
+
+/**
+ * Denormal protection for recursive paths (feedback delays, IIR state, envelopes).
+ *
+ * Instead of per-sample range checks or end-of-block flushes, each recursive path adds
+ * {@link #OFFSET} at its input, so decaying tails settle on a ~1e-18 floor (-360 dBFS,
+ * inaudible, far above the float denormal range near 1e-38) and never reach subnormals.
+ * Effects flip the sign of their offset once per block so that DC-blocking (high pass)
+ * paths are kept busy too.  No branches in the inner loops, so they stay vectorizable.
+ *
+ * Run with <code>-Dzone.fx.denormals=true</code> for an offset of 0, no protection at all
+ * (to measure what it saves, see DenormalBench in the tests).  A static final, folded by the JIT.
+ */
+public final class Denormal {
+
+    /** -360 dBFS, or 0 with zone.fx.denormals */
+    public static final float OFFSET = Boolean.getBoolean("zone.fx.denormals") ? 0f : 1.0E-18f;
+
+    private Denormal() { }
+
+}
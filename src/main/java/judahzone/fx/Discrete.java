@@ -0,0 +1,16 @@
+package judahzone.fx;
+
+import judahzone.api.FX;
+
+/**
+ * An effect with settings that select rather than scale: a type, algorithm, mode, cabinet,
+ * voice count or switch.  Stepping one of those swaps whole code paths (or reloads an
+ * impulse response) with a click, so {@link ModMatrix} only routes to the other settings.
+ * Effects that are not Discrete have continuous settings only.
+ */
+public interface Discrete extends FX {
+
+    /** true if setting idx selects rather than scales, and so may not be modulated */
+    boolean isDiscrete(int idx);
+
+}
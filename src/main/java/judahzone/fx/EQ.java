@@ -2,13 +2,11 @@
 package judahzone.fx;
 
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
 
-import judahzone.api.FX;
 import judahzone.util.Constants;
 import lombok.Getter;
 
-public class EQ implements FX.RTFX {
+public class EQ implements Tailless, Tileable {
 
     public static enum Settings { Bass, Mid, High, LoHz, Q, HiHz }
     public static enum EqBand { Bass, Mid, High }
@@ -29,22 +27,23 @@ public class EQ implements FX.RTFX {
     private static final float MIN_WIDTH = 0.5f;
     private static final float MAX_WIDTH = 5f;
     private static final float RANGE = MAX_WIDTH - MIN_WIDTH;
+    private static final EqBand[] BANDS = EqBand.values();
 
     @Getter
     private final String name = EQ.class.getSimpleName();
     @Getter
     private final int paramCount = Settings.values().length;
 
-    private final ArrayList<StereoBiquad> stereo = new ArrayList<>();
+    private final StereoBiquad[] stereo = new StereoBiquad[BANDS.length];
 
     public EQ() {
         this(DEFAULT);
     }
 
     public EQ(Frequencies hz) {
-        stereo.add(new StereoBiquad(hz.low));
-        stereo.add(new StereoBiquad(hz.mid));
-        stereo.add(new StereoBiquad(hz.high));
+        stereo[BASS] = new StereoBiquad(hz.low);
+        stereo[MID] = new StereoBiquad(hz.mid);
+        stereo[HIGH] = new StereoBiquad(hz.high);
     }
 
     private void update(StereoBiquad filter, Properties param, float value) {
@@ -57,21 +56,21 @@ public class EQ implements FX.RTFX {
     }
 
     private void update(EqBand band, Properties param, float value) {
-        update(stereo.get(band.ordinal()), param, value);
+        update(stereo[band.ordinal()], param, value);
     }
 
     @Override
     public int get(int idx) {
         if (idx < Settings.LoHz.ordinal()) {
-            float nonNormal = stereo.get(idx).gain_db;
+            float nonNormal = stereo[idx].gain_db;
             return Math.round(nonNormal * 2 + 50);
         }
         if (idx == Settings.LoHz.ordinal())
-            return Constants.reverseLog(stereo.get(BASS).frequency, MIN_HZ, LOW_MAX);
+            return Constants.reverseLog(stereo[BASS].frequency, MIN_HZ, LOW_MAX);
         if (idx == Settings.Q.ordinal())
             return (int) ((getWidth() - MIN_WIDTH) / RANGE * 100);
         if (idx == Settings.HiHz.ordinal())
-            return Constants.reverseLog(stereo.get(HIGH).frequency, HI_MIN, MAX_HZ);
+            return Constants.reverseLog(stereo[HIGH].frequency, HI_MIN, MAX_HZ);
         throw new InvalidParameterException("EQ param " + idx);
     }
 
@@ -79,7 +78,7 @@ public class EQ implements FX.RTFX {
     public void set(int idx, int val) {
         switch (idx) {
             case BASS, MID, HIGH -> {
-                EqBand band = EqBand.values()[idx];
+                EqBand band = BANDS[idx];
                 eqGain(band, val);
             }
             case 3 ->
@@ -103,7 +102,7 @@ public class EQ implements FX.RTFX {
     }
 
     public float getGain(EqBand band) {
-        return stereo.get(band.ordinal()).gain_db;
+        return stereo[band.ordinal()].gain_db;
     }
 
     @Override
@@ -113,7 +112,14 @@ public class EQ implements FX.RTFX {
         }
     }
 
+    @Override
+    public void process(float[] left, float[] right, int start, int end) {
+        for (StereoBiquad filter : stereo) {
+            filter.process(left, right, start, end);
+        }
+    }
+
     public float getWidth() {
-        return stereo.get(MID).bandwidth;
+        return stereo[MID].bandwidth;
     }
 }
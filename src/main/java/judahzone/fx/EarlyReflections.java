@@ -0,0 +1,160 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import judahzone.util.Constants;
+import lombok.Getter;
+
+/**
+ * Early reflections for the Reverb family: a sparse multi-tap FIR (tens of taps) read
+ * from one shared ring buffer of the (L+R)/2 input.  Tap times, gains, polarities and pans
+ * are generated from a room size; cost scales with the number of taps, not with the
+ * length of the pattern, so a late network can run cheaper (less room, fewer lines)
+ * while the reflections carry the perceived size and density.
+ *
+ * Patterns are built on the calling (GUI) thread and swapped in whole.
+ */
+public class EarlyReflections {
+
+    public static final int MAX_TAPS = 64;
+    public static final int DEFAULT_TAPS = 24;
+    /** seconds, first reflection */
+    static final float MIN_TIME = 0.004f;
+    /** seconds, last reflection of the largest room */
+    static final float MAX_TIME = 0.09f;
+
+    private static final int N_FRAMES = Constants.bufSize();
+    private static final int SAMPLE_RATE = Constants.sampleRate();
+
+    /** immutable tap set */
+    private static record Pattern(int[] delay, float[] gainL, float[] gainR) {}
+
+    private final float[] ring;
+    private final int mask;
+    private int pos;
+    private volatile Pattern pattern;
+
+    @Getter private float room = 0.5f;
+    @Getter private int taps = DEFAULT_TAPS;
+    @Getter private float level = 0.5f;
+    private final long seed;
+
+    public EarlyReflections() {
+        this(0x5eed);
+    }
+
+    /** @param seed same seed and room, same pattern */
+    public EarlyReflections(long seed) {
+        this.seed = seed;
+        int capacity = Integer.highestOneBit((int) (MAX_TIME * SAMPLE_RATE) + N_FRAMES + 2) * 2;
+        ring = new float[capacity];
+        mask = capacity - 1;
+        generate();
+    }
+
+    /** @param size 0 to 1, spreads reflections from ~10ms up to {@link #MAX_TIME} */
+    public void setRoom(float size) {
+        room = size < 0 ? 0 : size > 1 ? 1 : size;
+        generate();
+    }
+
+    public void setTaps(int count) {
+        if (count < 1 || count > MAX_TAPS)
+            throw new InvalidParameterException("taps " + count);
+        taps = count;
+        generate();
+    }
+
+    /** @param level 0 to 1 */
+    public void setLevel(float level) {
+        this.level = level;
+    }
+
+    /** Reflection density rises with time (inverse CDF of a linear density), gain falls off as 1/distance. */
+    private void generate() {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final int n = taps;
+        final float first = MIN_TIME * SAMPLE_RATE;
+        final float last = (0.01f + room * (MAX_TIME - 0.01f)) * SAMPLE_RATE;
+        int[] delay = new int[n];
+        float[] gainL = new float[n];
+        float[] gainR = new float[n];
+        double energy = 0;
+        for (int i = 0; i < n; i++) {
+            double u = (i + random.nextDouble()) / n;
+            float t = first + (last - first) * (float) Math.sqrt(u);
+            delay[i] = Math.max(1, Math.round(t));
+            float g = first / t * (random.nextBoolean() ? 1 : -1);
+            float pan = (float) random.nextDouble(-1, 1);
+            gainL[i] = g * (0.5f + 0.5f * pan);
+            gainR[i] = g * (0.5f - 0.5f * pan);
+            energy += gainL[i] * gainL[i] + gainR[i] * gainR[i];
+        }
+        float norm = (float) (1 / Math.sqrt(energy / 2 + 1e-12));
+        for (int i = 0; i < n; i++) {
+            gainL[i] *= norm;
+            gainR[i] *= norm;
+        }
+        pattern = new Pattern(delay, gainL, gainR);
+    }
+
+    /**
+     * Add reflections of the block in place.
+     * @param right may be null (mono, left only)
+     * @param wet additional scaling, e.g. the owning reverb's wet level */
+    public void process(float[] left, float[] right, float wet) {
+        final Pattern p = pattern;
+        final float[] buf = ring;
+        final int size = buf.length;
+        final int base = pos;
+
+        // write the block once, (L+R)/2, split at the wrap point
+        int first = Math.min(N_FRAMES, size - base);
+        if (right == null) {
+            System.arraycopy(left, 0, buf, base, first);
+            System.arraycopy(left, first, buf, 0, N_FRAMES - first);
+        } else {
+            for (int z = 0; z < first; z++)
+                buf[base + z] = (left[z] + right[z]) * 0.5f;
+            for (int z = first; z < N_FRAMES; z++)
+                buf[z - first] = (left[z] + right[z]) * 0.5f;
+        }
+
+        final float amount = level * wet;
+        final int[] delay = p.delay();
+        for (int t = 0; t < delay.length; t++) {
+            final float gl = p.gainL()[t] * amount;
+            final float gr = p.gainR()[t] * amount;
+            final int read = (base - delay[t]) & mask;
+            // contiguous spans, at most one wrap per tap
+            final int span = Math.min(N_FRAMES, size - read);
+            if (right == null) {
+                final float g = gl + gr;
+                for (int z = 0; z < span; z++)
+                    left[z] += g * buf[read + z];
+                for (int z = span; z < N_FRAMES; z++)
+                    left[z] += g * buf[z - span];
+            } else {
+                for (int z = 0; z < span; z++) {
+                    float x = buf[read + z];
+                    left[z] += gl * x;
+                    right[z] += gr * x;
+                }
+                for (int z = span; z < N_FRAMES; z++) {
+                    float x = buf[z - span];
+                    left[z] += gl * x;
+                    right[z] += gr * x;
+                }
+            }
+        }
+        pos = (base + N_FRAMES) & mask;
+    }
+
+    public void reset() {
+        Arrays.fill(ring, 0f);
+        pos = 0;
+    }
+
+}
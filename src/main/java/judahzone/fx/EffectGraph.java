@@ -0,0 +1,290 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import judahzone.api.FX;
+import judahzone.api.FX.RTFX;
+import judahzone.util.Constants;
+
+/**
+ * Directed acyclic graph of effects, run in place on a bus's buffers: parallel compression,
+ * wet/dry splits, parallel cabinets.  Build on the GUI thread, then {@link #compile()}
+ * (StereoBus.setGraph() does) and hand it to the RT thread.
+ *
+ * <pre>
+ *  EffectGraph g = new EffectGraph();
+ *  int dry = g.input();
+ *  int squashed = g.add(compressor, dry);     // using a node twice splits it
+ *  g.output(g.mix(new float[] {1f, 0.7f}, dry, squashed));
+ * </pre>
+ * Nodes may only consume earlier nodes, so the build order is already topological.
+ * compile() assigns every node output a buffer by liveness: a buffer is free again after
+ * the last node that reads it, an effect runs in place on its input when nothing later
+ * reads that input (otherwise it is copied, or read directly by an {@link OutOfPlace}
+ * effect), a mix accumulates into a dying input.  Greedy reuse over a fixed order
+ * is an interval colouring, so {@link #getScratchCount()} is the fewest buffers this order
+ * can run in; they are allocated once, nothing is allocated per cycle.
+ * Changing the topology means building and compiling a new graph; mix gains may change live.
+ */
+public final class EffectGraph implements FX.RTFX {
+
+    private static final int N_FRAMES = Constants.bufSize();
+
+    private enum Kind { INPUT, EFFECT, MIX }
+
+    private static final class Node {
+        final Kind kind;
+        final RTFX fx;
+        final int[] from;
+        final float[] gains;
+        int lastUse;
+        int slot;
+        int[] in; // slots of 'from'
+
+        Node(Kind kind, RTFX fx, int[] from, float[] gains) {
+            this.kind = kind;
+            this.fx = fx;
+            this.from = from;
+            this.gains = gains;
+        }
+    }
+
+    private final ArrayList<Node> nodes = new ArrayList<>();
+    private int output = -1;
+    private boolean compiled;
+
+    // compiled program, slot 0 is the caller's buffers
+    private Node[] program;
+    private float[][] bufL;
+    private float[][] bufR;
+    private int outSlot;
+
+    /** the bus buffers as they enter the graph, node 0 */
+    public int input() {
+        if (!nodes.isEmpty())
+            throw new InvalidParameterException("input is the first node");
+        return node(new Node(Kind.INPUT, null, new int[0], null));
+    }
+
+    /** fx processes the output of 'from' (copied first if 'from' is read again later) */
+    public int add(RTFX fx, int from) {
+        for (Node n : nodes)
+            if (n.fx == fx)
+                throw new InvalidParameterException(fx.getName() + " is already in the graph");
+        return node(new Node(Kind.EFFECT, fx, new int[] {check(from)}, null));
+    }
+
+    /** sum of the outputs of 'from', each times its gain */
+    public int mix(float[] gains, int... from) {
+        if (from.length == 0 || gains.length != from.length)
+            throw new InvalidParameterException(gains.length + " gains, " + from.length + " inputs");
+        for (int k = 0; k < from.length; k++) {
+            check(from[k]);
+            for (int p = 0; p < k; p++)
+                if (from[p] == from[k])
+                    throw new InvalidParameterException("node " + from[k] + " twice, sum its gains");
+        }
+        return node(new Node(Kind.MIX, null, from.clone(), gains.clone()));
+    }
+
+    /** unity sum of the outputs of 'from' */
+    public int merge(int... from) {
+        float[] unity = new float[from.length];
+        Arrays.fill(unity, 1f);
+        return mix(unity, from);
+    }
+
+    /** the node whose output leaves the graph, in the bus buffers */
+    public void output(int node) {
+        if (compiled)
+            throw new InvalidParameterException("compiled, build a new graph");
+        output = check(node);
+    }
+
+    /** live change of a mix gain, by the position of the input in mix() */
+    public void setGain(int mixNode, int input, float gain) {
+        Node n = nodes.get(check(mixNode));
+        if (n.kind != Kind.MIX || input < 0 || input >= n.gains.length)
+            throw new InvalidParameterException(mixNode + ": " + input);
+        n.gains[input] = gain;
+    }
+
+    private int node(Node n) {
+        if (compiled)
+            throw new InvalidParameterException("compiled, build a new graph");
+        nodes.add(n);
+        return nodes.size() - 1;
+    }
+
+    private int check(int node) {
+        if (node < 0 || node >= nodes.size())
+            throw new InvalidParameterException("node " + node);
+        return node;
+    }
+
+    /** GUI thread: liveness and buffer assignment, see the class comment */
+    public void compile() {
+        if (compiled)
+            return;
+        if (nodes.isEmpty() || output < 0)
+            throw new InvalidParameterException("no input or output");
+        final int count = nodes.size();
+        for (int i = 0; i < count; i++)
+            nodes.get(i).lastUse = i == output ? count : -1;
+        for (int i = 0; i < count; i++)
+            for (int f : nodes.get(i).from)
+                nodes.get(f).lastUse = Math.max(nodes.get(f).lastUse, i);
+
+        // by slot, true when free; slot 0 is the bus buffers, holding the input
+        ArrayList<Boolean> free = new ArrayList<>();
+        free.add(nodes.get(0).lastUse < 0);
+        ArrayList<Node> run = new ArrayList<>();
+        nodes.get(0).slot = 0;
+        for (int i = 1; i < count; i++) {
+            Node n = nodes.get(i);
+            if (n.lastUse < 0)
+                continue; // feeds nothing
+            n.slot = -1;
+            for (int f : n.from) // in place on an input that dies here
+                if (nodes.get(f).lastUse == i && n.slot < 0)
+                    n.slot = nodes.get(f).slot;
+            for (int f : n.from)
+                if (nodes.get(f).lastUse == i && nodes.get(f).slot != n.slot)
+                    free.set(nodes.get(f).slot, true);
+            if (n.slot < 0) {
+                n.slot = free.indexOf(true);
+                if (n.slot < 0) {
+                    n.slot = free.size();
+                    free.add(false);
+                } else
+                    free.set(n.slot, false);
+            }
+            n.in = new int[n.from.length];
+            for (int k = 0; k < n.from.length; k++)
+                n.in[k] = nodes.get(n.from[k]).slot;
+            run.add(n);
+        }
+        program = run.toArray(new Node[0]);
+        outSlot = nodes.get(output).slot;
+        bufL = new float[free.size()][];
+        bufR = new float[free.size()][];
+        for (int s = 1; s < free.size(); s++) {
+            bufL[s] = new float[N_FRAMES];
+            bufR[s] = new float[N_FRAMES];
+        }
+        compiled = true;
+    }
+
+    /** stereo buffers the graph needs besides the bus buffers */
+    public int getScratchCount() {
+        if (!compiled)
+            throw new InvalidParameterException("not compiled");
+        return bufL.length - 1;
+    }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        final float[][] ls = bufL, rs = bufR;
+        final boolean stereo = right != null;
+        ls[0] = left;
+        rs[0] = right;
+        for (Node n : program) {
+            final float[] outL = ls[n.slot];
+            final float[] outR = stereo ? rs[n.slot] : null;
+            if (n.kind == Kind.EFFECT) {
+                final int in = n.in[0];
+                if (in != n.slot && n.fx instanceof OutOfPlace oop) {
+                    oop.process(ls[in], stereo ? rs[in] : null, outL, outR); // mono: both rights null
+                    continue;
+                }
+                if (in != n.slot) {
+                    System.arraycopy(ls[in], 0, outL, 0, N_FRAMES);
+                    if (stereo)
+                        System.arraycopy(rs[in], 0, outR, 0, N_FRAMES);
+                }
+                n.fx.process(outL, outR);
+            } else
+                mix(n, outL, outR, stereo);
+        }
+        if (outSlot != 0) {
+            System.arraycopy(ls[outSlot], 0, left, 0, N_FRAMES);
+            if (stereo)
+                System.arraycopy(rs[outSlot], 0, right, 0, N_FRAMES);
+        }
+    }
+
+    // the output slot is either one of the inputs (scaled first) or fresh (first input assigned)
+    private void mix(Node n, float[] outL, float[] outR, boolean stereo) {
+        final int[] in = n.in;
+        int first = -1;
+        for (int k = 0; k < in.length && first < 0; k++)
+            if (in[k] == n.slot)
+                first = k;
+        final boolean inPlace = first >= 0;
+        if (!inPlace)
+            first = 0;
+        final float g0 = n.gains[first];
+        final int s0 = in[first];
+        scale(bufL[s0], outL, g0);
+        if (stereo)
+            scale(bufR[s0], outR, g0);
+        for (int k = 0; k < in.length; k++) {
+            if (k == first)
+                continue;
+            final int s = in[k];
+            final float g = n.gains[k];
+            add(bufL[s], outL, g);
+            if (stereo)
+                add(bufR[s], outR, g);
+        }
+    }
+
+    private static void scale(float[] in, float[] out, float g) {
+        if (g == 1f && in == out)
+            return;
+        for (int i = 0; i < N_FRAMES; i++)
+            out[i] = in[i] * g;
+    }
+
+    private static void add(float[] in, float[] out, float g) {
+        for (int i = 0; i < N_FRAMES; i++)
+            out[i] += in[i] * g;
+    }
+
+    @Override
+    public String getName() {
+        return EffectGraph.class.getSimpleName();
+    }
+
+    @Override
+    public int getParamCount() {
+        return 0;
+    }
+
+    @Override
+    public int get(int idx) {
+        throw new InvalidParameterException("" + idx);
+    }
+
+    @Override
+    public void set(int idx, int value) {
+        throw new InvalidParameterException("" + idx);
+    }
+
+    @Override
+    public void reset() {
+        for (Node n : nodes)
+            if (n.fx != null)
+                n.fx.reset();
+    }
+
+    @Override
+    public void activate() {
+        for (Node n : nodes)
+            if (n.fx != null)
+                n.fx.activate();
+    }
+
+}
@@ -0,0 +1,289 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * Feedback Delay Network reverb: 8 (or 16) delay lines mixed through a Householder
+ * matrix (O(N) per sample: each line feeds back itself minus 2/N of the sum of all lines),
+ * a one-pole damping filter per line and slowly modulated read taps to keep the tail
+ * from ringing metallic.  Left input feeds the even lines and right input the odd lines,
+ * outputs are alternating-sign sums of the same lines.
+ *
+ * Honors the same Room/Damp/Wet/Width settings (and ranges) as Freeverb; room size
+ * maps to RT60 from {@link #MIN_RT60} to {@link #MAX_RT60} seconds.
+ */
+public final class FDNReverb extends Reverb {
+
+    public static final float MIN_RT60 = 0.3f;
+    public static final float MAX_RT60 = 8f;
+
+    /** mutually prime line lengths in samples at 48k, 16 available */
+    private static final int[] LENGTHS = {
+            1031, 1327, 1523, 1871, 2053, 2297, 2539, 2819,
+            1117, 1433, 1663, 1949, 2161, 2417, 2687, 2953 };
+    private static final float MOD_DEPTH = 6f; // samples at 48k
+    private static final float MOD_RATE = 0.37f; // Hz
+    private static final float INPUT_GAIN = 0.35f;
+    private static final float scaledamp = 0.4f;
+
+    private static final float initialroom = 0.6f;
+    private static final float initialdamp = 1.5f;
+    private static final float initialwet = 0.4f;
+    private static final float initialwidth = 0.9f;
+
+    private final int size;
+    private final float householder;
+    private final float outGain;
+    // all lines back to back, each a power of two long
+    private final float[] buffer;
+    private final int[] offsets;
+    private final int[] masks;
+    private final int[] delays;
+    // modulated read position (delay + whole samples) and fraction, per control block
+    private final int[] taps;
+    private final float[] fracs;
+    private final float[] gains; // per-line decay for the current RT60
+    private final float[] lowpass; // per-line damping state
+    private final float[] scratch; // line outputs of the current sample
+    private final float modDepth;
+    private final float modPhaseInc;
+    private int pos;
+    private float modPhase;
+    // anti-denormal offset, sign flipped every block
+    private float dc = Denormal.OFFSET;
+
+    private float room;
+    private float damp;
+    private float wet;
+    private float width;
+    private volatile boolean dirty = true;
+
+    public FDNReverb() {
+        this(8);
+    }
+
+    /** @param lines 8 or 16 delay lines */
+    public FDNReverb(int lines) {
+        if (lines != 8 && lines != 16)
+            throw new InvalidParameterException("lines " + lines);
+        size = lines;
+        householder = 2f / size;
+        outGain = 1f / (float) Math.sqrt(size / 2);
+        float srScale = SAMPLE_RATE / 48000f;
+        modDepth = MOD_DEPTH * srScale;
+        modPhaseInc = FastMath.TWO_PI * MOD_RATE * Smoother.CONTROL / SAMPLE_RATE;
+
+        offsets = new int[size];
+        masks = new int[size];
+        delays = new int[size];
+        taps = new int[size];
+        fracs = new float[size];
+        gains = new float[size];
+        lowpass = new float[size];
+        scratch = new float[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            delays[i] = Math.round(LENGTHS[i] * srScale);
+            int capacity = Integer.highestOneBit((int) (delays[i] + 2 * modDepth + 4) * 2 - 1);
+            offsets[i] = total;
+            masks[i] = capacity - 1;
+            total += capacity;
+        }
+        buffer = new float[total];
+
+        setRoomSize(initialroom);
+        setDamp(initialdamp);
+        setWet(initialwet);
+        setWidth(initialwidth);
+    }
+
+    @Override
+    public int get(int idx) {
+        if (idx == Settings.Room.ordinal())
+            return Math.round(getRoomSize() * 100);
+        if (idx == Settings.Damp.ordinal())
+            return Math.round(getDamp() * 50);
+        if (idx == Settings.Wet.ordinal())
+            return Math.round(getWet() * 100);
+        if (idx == Settings.Width.ordinal())
+            return Math.round(width * 100);
+        throw new InvalidParameterException();
+    }
+
+    @Override
+    public void set(int idx, int value) {
+        if (idx == Settings.Room.ordinal())
+            setRoomSize(value * 0.01f);
+        else if (idx == Settings.Damp.ordinal())
+            setDamp(value * 0.02f);
+        else if (idx == Settings.Wet.ordinal())
+            setWet(value * 0.01f);
+        else if (idx == Settings.Width.ordinal())
+            setWidth(value * 0.01f);
+        else throw new InvalidParameterException();
+    }
+
+    @Override public boolean isInternal() { return true; }
+
+    @Override
+    public void setRoomSize(float value) {
+        room = value < 0 ? 0 : value > 1 ? 1 : value;
+        dirty = true;
+    }
+
+    @Override
+    public float getRoomSize() {
+        return room;
+    }
+
+    @Override
+    public void setDamp(float value) {
+        damp = value * scaledamp;
+        dirty = true;
+    }
+
+    @Override
+    public float getDamp() {
+        return damp / scaledamp;
+    }
+
+    @Override
+    public void setWet(float value) {
+        wet = value;
+    }
+
+    @Override
+    public float getWet() {
+        return wet;
+    }
+
+    @Override
+    public void setWidth(float value) {
+        width = value;
+    }
+
+    @Override
+    public float getWidth() {
+        return width;
+    }
+
+    /** @return decay time in seconds for the current room size */
+    public float getRT60() {
+        return MIN_RT60 * (float) Math.pow(MAX_RT60 / MIN_RT60, room);
+    }
+
+    @Override
+    public void activate() {
+        dirty = true;
+    }
+
+    // per-line gain for -60dB after RT60 seconds
+    private void update() {
+        float samples = getRT60() * SAMPLE_RATE;
+        for (int i = 0; i < size; i++)
+            gains[i] = FastMath.dB2rap(-60f * delays[i] / samples);
+        dirty = false;
+    }
+
+    // advance the tap LFO one control block (held for the block), per-line phase offsets
+    private void modulate() {
+        modPhase += modPhaseInc;
+        if (modPhase > FastMath.TWO_PI)
+            modPhase -= FastMath.TWO_PI;
+        final float spread = FastMath.TWO_PI / size;
+        for (int i = 0; i < size; i++) {
+            float m = modDepth * (1f + FastMath.sin(modPhase + i * spread));
+            int mi = (int) m; // m >= 0
+            taps[i] = delays[i] + mi;
+            fracs[i] = m - mi;
+        }
+    }
+
+    // modulated read of line i, 'p' samples into the stream
+    private float tap(float[] buf, int p, int i) {
+        final int ri = p - taps[i];
+        final int mask = masks[i];
+        final int offset = offsets[i];
+        float a = buf[offset + (ri & mask)];
+        return a + (buf[offset + ((ri - 1) & mask)] - a) * fracs[i];
+    }
+
+    // damp and decay one line output, return its feedback contribution
+    private float feedback(float o, int i, float d1, float d2) {
+        float lp = o * d2 + lowpass[i] * d1;
+        lowpass[i] = lp;
+        return lp * gains[i];
+    }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        reflect(left, right);
+        if (dirty) update();
+        final boolean mono = right == null;
+        final float d1 = damp > 0.95f ? 0.95f : damp;
+        final float d2 = 1 - d1;
+        final float wet1 = wet * (width / 2.0f + 0.5f);
+        final float wet2 = wet * ((1.0f - width) / 2.0f);
+        final float[] buf = buffer;
+        final float[] out = scratch;
+        final float dc = this.dc = -this.dc;
+        int p = pos;
+
+        for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+            modulate();
+            final int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+            for (int z = start; z < end; z++) {
+                final float inL = left[z];
+                final float inR = mono ? inL : right[z];
+
+                // read taps in pairs: even line -> left, odd line -> right, sign alternates per pair
+                float sum = 0;
+                float wetL = 0, wetR = 0;
+                for (int i = 0; i < size; i += 2) {
+                    float oL = tap(buf, p, i);
+                    float oR = tap(buf, p, i + 1);
+                    float sign = 1 - (i & 2);
+                    wetL += oL * sign;
+                    wetR += oR * sign;
+                    float sL = feedback(oL, i, d1, d2);
+                    float sR = feedback(oR, i + 1, d1, d2);
+                    out[i] = sL;
+                    out[i + 1] = sR;
+                    sum += sL + sR;
+                }
+
+                // Householder feedback plus input injection
+                final float h = sum * householder;
+                final float injectL = inL * INPUT_GAIN - h + dc;
+                final float injectR = inR * INPUT_GAIN - h + dc;
+                for (int i = 0; i < size; i += 2) {
+                    buf[offsets[i] + (p & masks[i])] = out[i] + injectL;
+                    buf[offsets[i + 1] + (p & masks[i + 1])] = out[i + 1] + injectR;
+                }
+                p++;
+
+                wetL *= outGain;
+                wetR *= outGain;
+                if (mono)
+                    left[z] = inL + (wetL + wetR) * 0.5f * wet;
+                else {
+                    left[z] = inL + wetL * wet1 + wetR * wet2;
+                    right[z] = inR + wetR * wet1 + wetL * wet2;
+                }
+            }
+        }
+        pos = p & 0x3fffffff;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(buffer, 0f);
+        Arrays.fill(lowpass, 0f);
+        pos = 0;
+        modPhase = 0;
+        if (early != null)
+            early.reset();
+    }
+
+}
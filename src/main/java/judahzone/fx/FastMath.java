@@ -0,0 +1,109 @@
+package judahzone.fx;
+
+/**
+ * Polynomial approximations of the transcendentals used on DSP hot paths
+ * (coefficient calculation, LFOs, dynamics gain computers).
+ *
+ * Error bounds, measured against java.lang.Math in double precision:
+ * <pre>
+ *  sin, cos    [-50, 50]        absolute  &lt; 5e-6    (float range reduction beyond)
+ *  tan         [0, 1.45]        relative  &lt; 1e-5    (filter prewarp, up to 0.46 * SR)
+ *  sinh        [-4, 4]          relative  &lt; 1e-5
+ *  exp2        [-126, 127]      relative  &lt; 4e-6
+ *  log2        normal floats    absolute  &lt; 1.1e-4
+ *  dB2rap      [-400, 400] dB   relative  &lt; 1e-5    (~0.0001 dB)
+ *  rap2dB      normal floats    absolute  &lt; 0.0007 dB
+ * </pre>
+ * Run with <code>-Dzone.fx.precise=true</code> to route every call through java.lang.Math
+ * instead (A/B listening, debugging).  The flag is a static final, so the JIT folds it away.
+ */
+public final class FastMath {
+
+    /** true: delegate to java.lang.Math */
+    public static final boolean PRECISE = Boolean.getBoolean("zone.fx.precise");
+
+    public static final float PI = (float) Math.PI;
+    public static final float TWO_PI = (float) (2 * Math.PI);
+    public static final float HALF_PI = (float) (0.5 * Math.PI);
+    public static final float SQRT2 = 1.4142135f;
+    /** 20 * log10(2), dB per octave of linear amplitude */
+    public static final float DB_PER_LOG2 = 6.0205999f;
+    /** log2(10) / 20, octaves per dB */
+    public static final float LOG2_PER_DB = 0.16609640f;
+    /** log2(e) */
+    public static final float LOG2_E = 1.4426950f;
+
+    private static final float INV_TWO_PI = (float) (0.5 / Math.PI);
+
+    private FastMath() { }
+
+    /** odd 7th order polynomial after reduction to [-pi/2, pi/2] */
+    public static float sin(float x) {
+        if (PRECISE) return (float) Math.sin(x);
+        float q = x * INV_TWO_PI;
+        x = (q - Math.round(q)) * TWO_PI; // [-pi, pi]
+        if (x > HALF_PI)
+            x = PI - x;
+        else if (x < -HALF_PI)
+            x = -PI - x;
+        float x2 = x * x;
+        return x * (0.99999952f + x2 * (-0.16665728f + x2 * (0.0083133878f - x2 * 0.00018523456f)));
+    }
+
+    public static float cos(float x) {
+        if (PRECISE) return (float) Math.cos(x);
+        return sin(x + HALF_PI);
+    }
+
+    /** sin / cos polynomials without range reduction: filter prewarping in [0, 1.5] */
+    public static float tan(float x) {
+        if (PRECISE) return (float) Math.tan(x);
+        float x2 = x * x;
+        float s = x * (0.99999952f + x2 * (-0.16665728f + x2 * (0.0083133878f - x2 * 0.00018523456f)));
+        float c = 0.99999996f + x2 * (-0.49999897f + x2 * (0.041663429f + x2 * (-0.0013853099f + x2 * 0.000023152479f)));
+        return s / c;
+    }
+
+    /** Taylor series near zero (no cancellation), exp2 pair elsewhere */
+    public static float sinh(float x) {
+        if (PRECISE) return (float) Math.sinh(x);
+        if (x > -0.5f && x < 0.5f) {
+            float x2 = x * x;
+            return x * (1f + x2 * (0.16666667f + x2 * (0.0083333333f + x2 * 0.00019841270f)));
+        }
+        float e = exp2(x * LOG2_E);
+        return 0.5f * (e - 1f / e);
+    }
+
+    /** integer part into the exponent bits, 4th order polynomial for the fraction */
+    public static float exp2(float x) {
+        if (PRECISE) return (float) Math.pow(2, x);
+        if (x < -126f) return 0f;
+        if (x > 127f) x = 127f;
+        int fl = (int) x; // truncates toward zero
+        if (x < fl) fl--;
+        float f = x - fl;
+        float p = 1.0000036f + (0.69296955f + (0.24162132f + (0.051717736f + 0.013683983f * f) * f) * f) * f;
+        return p * Float.intBitsToFloat((fl + 127) << 23);
+    }
+
+    /** exponent bits plus a 4th order polynomial on the mantissa */
+    public static float log2(float x) {
+        if (PRECISE) return (float) (Math.log(x) * LOG2_E);
+        int bits = Float.floatToRawIntBits(x);
+        float exp = ((bits >> 23) & 0xff) - 127;
+        float m = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000); // [1, 2)
+        return exp + (-2.5056145f + (4.0496166f + (-2.0994020f + (0.63551097f - 0.080010852f * m) * m) * m) * m);
+    }
+
+    /** decibels to linear amplitude */
+    public static float dB2rap(float dB) {
+        return exp2(dB * LOG2_PER_DB);
+    }
+
+    /** linear amplitude to decibels */
+    public static float rap2dB(float rap) {
+        return log2(rap) * DB_PER_LOG2;
+    }
+
+}
@@ -3,11 +3,10 @@ package judahzone.fx;
 
 import java.security.InvalidParameterException;
 
-import judahzone.api.FX;
 import judahzone.util.Constants;
 import lombok.Getter;
 
-public class Filter implements FX.RTFX {
+public class Filter implements Tailless, Tileable, Discrete {
 
     public enum Settings { Type, Hz, Width, dB }
 
@@ -21,6 +20,11 @@ public class Filter implements FX.RTFX {
 
     private final StereoBiquad filter;
 
+    /** low pass, see {@link Settings#Type} */
+    public Filter() {
+        this(true);
+    }
+
     public Filter(boolean lowPass) {
         float hz = lowPass ? MAX : MIN;
         StereoBiquad.FilterType type = lowPass
@@ -46,6 +50,11 @@ public class Filter implements FX.RTFX {
         filter.coefficients();
     }
 
+    @Override
+    public boolean isDiscrete(int idx) {
+        return idx == Settings.Type.ordinal();
+    }
+
     @Override
     public int get(int idx) {
         if (idx == Settings.dB.ordinal())
@@ -63,4 +72,9 @@ public class Filter implements FX.RTFX {
     public void process(float[] left, float[] right) {
         filter.process(left, right);
     }
+
+    @Override
+    public void process(float[] left, float[] right, int start, int end) {
+        filter.process(left, right, start, end);
+    }
 }
@@ -0,0 +1,223 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+import judahzone.util.Constants;
+import lombok.Getter;
+
+/**
+ * HiCut/LoCut biquads of a whole synth voice bank (up to {@link #MAX_VOICES}) in one call,
+ * struct-of-arrays: coefficients and states are arrays indexed by voice, loaded into locals
+ * {@link #LANES} voices at a time so their recursions run side by side, in float.
+ *
+ * Per voice cutoff, resonance and type, ramped at control rate like MonoFilter and with
+ * its coefficients (float here).  A HiCut above 0.45 * SR with no resonance is bypassed
+ * (unity coefficients) instead of MonoFilter's wet crossfade.
+ */
+public final class FilterBank {
+
+    public static final int MAX_VOICES = 16;
+    /** voices advanced together in one loop */
+    static final int LANES = 4;
+
+    private static final int N_FRAMES = Constants.bufSize();
+    private static final int SR = Constants.sampleRate();
+
+    @Getter private final int voices;
+    private final MonoFilter.Type[] type;
+    private final Smoother[] cutoff;
+    private final Smoother[] resonance;
+    private final boolean[] dirty;
+    // coefficients and states by voice
+    private final float[] a0, a1, a2, b1, b2;
+    private final float[] x1, x2, y1, y2;
+    private final double[] coef = new double[5];
+    // anti-denormal offset, sign flipped every block
+    private float dc = Denormal.OFFSET;
+
+    /** @param voices 1 to {@link #MAX_VOICES}, best in multiples of {@link #LANES} */
+    public FilterBank(int voices, MonoFilter.Type initial) {
+        if (voices < 1 || voices > MAX_VOICES)
+            throw new InvalidParameterException("voices " + voices);
+        if (initial.isSvf())
+            throw new InvalidParameterException(initial.name());
+        this.voices = voices;
+        type = new MonoFilter.Type[voices];
+        Arrays.fill(type, initial);
+        cutoff = new Smoother[voices];
+        resonance = new Smoother[voices];
+        dirty = new boolean[voices];
+        for (int v = 0; v < voices; v++) {
+            cutoff[v] = new Smoother(666, Smoother.TICKS, true);
+            resonance[v] = new Smoother(1);
+        }
+        a0 = new float[voices];
+        a1 = new float[voices];
+        a2 = new float[voices];
+        b1 = new float[voices];
+        b2 = new float[voices];
+        x1 = new float[voices];
+        x2 = new float[voices];
+        y1 = new float[voices];
+        y2 = new float[voices];
+        reset();
+    }
+
+    private void check(int voice) {
+        if (voice < 0 || voice >= voices)
+            throw new InvalidParameterException("voice " + voice);
+    }
+
+    /** Hz */
+    public void setFrequency(int voice, float hz) {
+        check(voice);
+        cutoff[voice].set(hz);
+    }
+
+    public float getFrequency(int voice) {
+        check(voice);
+        return cutoff[voice].getTarget();
+    }
+
+    /** dB, 0 to 30 */
+    public void setResonance(int voice, float db) {
+        check(voice);
+        resonance[voice].set(db);
+    }
+
+    public float getResonance(int voice) {
+        check(voice);
+        return resonance[voice].getTarget();
+    }
+
+    /** HiCut or LoCut */
+    public void setFilterType(int voice, MonoFilter.Type t) {
+        check(voice);
+        if (t.isSvf())
+            throw new InvalidParameterException(t.name());
+        type[voice] = t;
+        dirty[voice] = true;
+    }
+
+    public MonoFilter.Type getFilterType(int voice) {
+        check(voice);
+        return type[voice];
+    }
+
+    /** clear filter states, jump to the current targets */
+    public void reset() {
+        Arrays.fill(x1, 0f);
+        Arrays.fill(x2, 0f);
+        Arrays.fill(y1, 0f);
+        Arrays.fill(y2, 0f);
+        for (int v = 0; v < voices; v++) {
+            cutoff[v].snap();
+            resonance[v].snap();
+            calc(v);
+        }
+    }
+
+    /** clear one voice (note on) */
+    public void reset(int voice) {
+        check(voice);
+        x1[voice] = x2[voice] = y1[voice] = y2[voice] = 0;
+        cutoff[voice].snap();
+        resonance[voice].snap();
+        calc(voice);
+    }
+
+    private void calc(int v) {
+        dirty[v] = false;
+        MonoFilter.Type t = type[v];
+        double rdB = resonance[v].value();
+        rdB = rdB < 0 ? 0 : rdB > 30 ? 30 : rdB;
+        double r = cutoff[v].value() / SR;
+        if (t == MonoFilter.Type.HiCut && r > 0.45 && rdB < 0.00001) {
+            a0[v] = 1; // bypass
+            a1[v] = a2[v] = b1[v] = b2[v] = 0;
+            return;
+        }
+        r = r > 0.45 ? 0.45 : r < 0.0001 ? 0.0001 : r;
+        MonoFilter.biquad(t, r, rdB, coef);
+        a0[v] = (float) coef[0];
+        a1[v] = (float) coef[1];
+        a2[v] = (float) coef[2];
+        b1[v] = (float) coef[3];
+        b2[v] = (float) coef[4];
+    }
+
+    /** Each voice's buffer in place, N_FRAMES each. */
+    public void process(float[][] buffers) {
+        final int n = voices;
+        final float offset = dc = -dc;
+        for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+            for (int v = 0; v < n; v++) {
+                boolean moved = cutoff[v].tick() | resonance[v].tick();
+                if (moved || dirty[v])
+                    calc(v);
+            }
+            final int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+            int v = 0;
+            for (; v + LANES <= n; v += LANES)
+                lanes(buffers, v, start, end, offset);
+            for (; v < n; v++)
+                single(buffers[v], v, start, end, offset);
+        }
+    }
+
+    /**
+     * Four voices per sample, states and coefficients in locals: four independent
+     * recursions in flight instead of one latency-bound chain per voice.
+     */
+    private void lanes(float[][] buffers, int v, int start, int end, float offset) {
+        final float[] ba = buffers[v], bb = buffers[v + 1], bc = buffers[v + 2], bd = buffers[v + 3];
+        final float a0a = a0[v], a0b = a0[v + 1], a0c = a0[v + 2], a0d = a0[v + 3];
+        final float a1a = a1[v], a1b = a1[v + 1], a1c = a1[v + 2], a1d = a1[v + 3];
+        final float a2a = a2[v], a2b = a2[v + 1], a2c = a2[v + 2], a2d = a2[v + 3];
+        final float b1a = b1[v], b1b = b1[v + 1], b1c = b1[v + 2], b1d = b1[v + 3];
+        final float b2a = b2[v], b2b = b2[v + 1], b2c = b2[v + 2], b2d = b2[v + 3];
+        float x1a = x1[v], x1b = x1[v + 1], x1c = x1[v + 2], x1d = x1[v + 3];
+        float x2a = x2[v], x2b = x2[v + 1], x2c = x2[v + 2], x2d = x2[v + 3];
+        float y1a = y1[v], y1b = y1[v + 1], y1c = y1[v + 2], y1d = y1[v + 3];
+        float y2a = y2[v], y2b = y2[v + 1], y2c = y2[v + 2], y2d = y2[v + 3];
+        for (int i = start; i < end; i++) {
+            final float xa = ba[i] + offset, xb = bb[i] + offset, xc = bc[i] + offset, xd = bd[i] + offset;
+            final float ya = a0a * xa + a1a * x1a + a2a * x2a - b1a * y1a - b2a * y2a;
+            final float yb = a0b * xb + a1b * x1b + a2b * x2b - b1b * y1b - b2b * y2b;
+            final float yc = a0c * xc + a1c * x1c + a2c * x2c - b1c * y1c - b2c * y2c;
+            final float yd = a0d * xd + a1d * x1d + a2d * x2d - b1d * y1d - b2d * y2d;
+            x2a = x1a; x1a = xa; y2a = y1a; y1a = ya;
+            x2b = x1b; x1b = xb; y2b = y1b; y1b = yb;
+            x2c = x1c; x1c = xc; y2c = y1c; y1c = yc;
+            x2d = x1d; x1d = xd; y2d = y1d; y1d = yd;
+            ba[i] = ya;
+            bb[i] = yb;
+            bc[i] = yc;
+            bd[i] = yd;
+        }
+        x1[v] = x1a; x1[v + 1] = x1b; x1[v + 2] = x1c; x1[v + 3] = x1d;
+        x2[v] = x2a; x2[v + 1] = x2b; x2[v + 2] = x2c; x2[v + 3] = x2d;
+        y1[v] = y1a; y1[v + 1] = y1b; y1[v + 2] = y1c; y1[v + 3] = y1d;
+        y2[v] = y2a; y2[v + 1] = y2b; y2[v + 2] = y2c; y2[v + 3] = y2d;
+    }
+
+    private void single(float[] buf, int v, int start, int end, float offset) {
+        final float _a0 = a0[v], _a1 = a1[v], _a2 = a2[v], _b1 = b1[v], _b2 = b2[v];
+        float _x1 = x1[v], _x2 = x2[v], _y1 = y1[v], _y2 = y2[v];
+        for (int i = start; i < end; i++) {
+            final float x = buf[i] + offset;
+            final float y = _a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2;
+            _x2 = _x1;
+            _x1 = x;
+            _y2 = _y1;
+            _y1 = y;
+            buf[i] = y;
+        }
+        x1[v] = _x1;
+        x2[v] = _x2;
+        y1[v] = _y1;
+        y2[v] = _y2;
+    }
+
+}
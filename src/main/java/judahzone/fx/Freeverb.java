@@ -12,8 +12,6 @@ package judahzone.fx;
 import java.security.InvalidParameterException;
 import java.util.Arrays;
 
-import lombok.Setter;
-
 /** The classic Freeverb algorithm, true stereo with independent L/R filter networks */
 public final class Freeverb extends Reverb {
 
@@ -36,19 +34,11 @@ public final class Freeverb extends Reverb {
     private float dry;
     private float width;
     private boolean dirty;
-    // Comb filters
-    private int numcombs;
-    private Comb[] combL;
-    private Comb[] combR;
-    // Allpass filters
-    private int numallpasses;
-    private Allpass[] allpassL;
-    private Allpass[] allpassR;
-    //scratch buffers
-    private float[] inScratchL = new float[N_FRAMES];
-    private float[] inScratchR = new float[N_FRAMES];
-    private float[] outScratchL = new float[N_FRAMES];
-    private float[] outScratchR = new float[N_FRAMES];
+    // anti-denormal offset, sign flipped every block
+    private float dc = Denormal.OFFSET;
+    // comb and allpass networks, one per channel
+    private final Network left;
+    private final Network right;
 
     public Freeverb() {
         setWet(initialwet);
@@ -58,30 +48,19 @@ public final class Freeverb extends Reverb {
         setWidth(initialwidth);
 
         int[] delays = { 1111, 1203, 1273, 1373, 1424, 1477, 1548, 1593, 1659, 1694, 1727, 1760 };
-        numcombs = delays.length;
-        combL = new Comb[numcombs];
-        combR = new Comb[numcombs];
+        int[] delaysR = new int[delays.length];
         // create R delays slightly offset to decorrelate channels
         final int rightOffset = 23;
-        for (int i = 0; i < numcombs; i++) {
-            combL[i] = new Comb(delays[i]);
-            combR[i] = new Comb(delays[i] + rightOffset);
-        }
+        for (int i = 0; i < delays.length; i++)
+            delaysR[i] = delays[i] + rightOffset;
 
         int[] tuning = {408,  616,   550, 467, 321, 239};
-        numallpasses = tuning.length;
-        allpassL = new Allpass[numallpasses];
-        allpassR = new Allpass[numallpasses];
-        for (int i = 0; i < numallpasses; i++) {
-            int sizeL = tuning[i];
-            int sizeR = Math.max(1, sizeL + (i % 2 == 0 ? 11 : -7)); // small allpassR decorrelation
-            allpassL[i] = new Allpass(sizeL);
-            allpassR[i] = new Allpass(sizeR);
-        }
-        for (int i = 0; i < numallpasses; i++) {
-            allpassL[i].setFeedback(0.6f);
-            allpassR[i].setFeedback(0.6f);
-        }
+        int[] tuningR = new int[tuning.length];
+        for (int i = 0; i < tuning.length; i++)
+            tuningR[i] = Math.max(1, tuning[i] + (i % 2 == 0 ? 11 : -7)); // small allpassR decorrelation
+
+        left = new Network(delays, tuning);
+        right = new Network(delaysR, tuningR);
 
         // prepare all buffers!
         dirty = true;
@@ -174,17 +153,14 @@ public final class Freeverb extends Reverb {
     }
 
     private void update() {
-        for (int i = 0; i < numcombs; i++) {
-            combL[i].setFeedback(roomsize);
-            combL[i].setdamp(damp);
-            combR[i].setFeedback(roomsize);
-            combR[i].setdamp(damp);
-        }
+        left.setComb(roomsize, damp);
+        right.setComb(roomsize, damp);
         dirty = false;
     }
 
     @Override
     public void process(float[] left, float[] right) {
+        reflect(left, right);
         if (right == null) {
             // mono: process only left, produce mono wet (no cross-channel)
             processMono(left);
@@ -194,180 +170,132 @@ public final class Freeverb extends Reverb {
         // stereo: process both buffers together
         if (dirty) update();
 
-        float ourGain = fixedgain;
-        for (int i = 0; i < N_FRAMES; i++) {
-            inScratchL[i] = left[i] * ourGain;
-            inScratchR[i] = right[i] * ourGain;
-        }
-
-        Arrays.fill(outScratchL, 0);
-        Arrays.fill(outScratchR, 0);
-
-        // ---- Run the first couple of allpass filters as pre-diffusion ----
-        final int preAllpasses = Math.min(2, numallpasses);
-        for (int i = 0; i < preAllpasses; i++) {
-            allpassL[i].processReplace(inScratchL, inScratchL);
-            allpassR[i].processReplace(inScratchR, inScratchR);
-        }
-
-        // Run combs on the diffused input
-        for (int i = 0; i < numcombs; i++) {
-            combL[i].processMix(inScratchL, outScratchL);
-            combR[i].processMix(inScratchR, outScratchR);
-        }
-
-        // ---- Run any remaining allpasses as post-diffusion (as before) ----
-        for (int i = preAllpasses; i < numallpasses; i++) {
-            allpassL[i].processReplace(outScratchL, outScratchL);
-            allpassR[i].processReplace(outScratchR, outScratchR);
-        }
-
         // compute width mixes
         // wet1 = wet * (width/2 + 0.5)  -> primary (same-channel) wet gain
         // wet2 = wet * ((1 - width)/2) -> cross-channel wet gain
-        float wet1 = wet * (width / 2.0f + 0.5f);
-        float wet2 = wet * ((1.0f - width) / 2.0f);
+        final float wet1 = wet * (width / 2.0f + 0.5f);
+        final float wet2 = wet * ((1.0f - width) / 2.0f);
+        final Network netL = this.left;
+        final Network netR = this.right;
+        final float dc = this.dc = -this.dc;
 
-        // write back outputs with wet/dry + stereo width cross-mix
+        // one pass: both networks per sample, then wet/dry + stereo width cross-mix
         for (int i = 0; i < N_FRAMES; i++) {
             float inL = left[i];
             float inR = right[i];
-            float reverbL = outScratchL[i];
-            float reverbR = outScratchR[i];
-
-            float outL = inL + reverbL * wet1 + reverbR * wet2;
-            float outR = inR + reverbR * wet1 + reverbL * wet2;
+            float reverbL = netL.tick(inL * fixedgain + dc);
+            float reverbR = netR.tick(inR * fixedgain + dc);
 
-            left[i] = outL;
-            right[i] = outR;
+            left[i] = inL + reverbL * wet1 + reverbR * wet2;
+            right[i] = inR + reverbR * wet1 + reverbL * wet2;
         }
     }
 
     private void processMono(float[] buf) {
         if (dirty) update();
-
-        float ourGain = fixedgain;
-        for (int i = 0; i < N_FRAMES; i++)
-            inScratchL[i] = buf[i] * ourGain;
-
-        float[] work = outScratchL;
-        Arrays.fill(work, 0);
-
-        final int preAllpasses = Math.min(2, numallpasses);
-        for (int i = 0; i < preAllpasses; i++)
-            allpassL[i].processReplace(inScratchL, inScratchL);
-
-        for (int i = 0; i < numcombs; i++)
-            combL[i].processMix(inScratchL, work);
-
-        for (int i = preAllpasses; i < numallpasses; i++)
-            allpassL[i].processReplace(work, work);
-
+        final Network net = left;
+        final float dc = this.dc = -this.dc;
         for (int i = 0; i < N_FRAMES; i++)
-            buf[i] = buf[i] + work[i] * wet; // simple mono wet
+            buf[i] = buf[i] + net.tick(buf[i] * fixedgain + dc) * wet; // simple mono wet
     }
 
-    private class Comb {
-
-        @Setter float feedback; // roomsize
-        float filterstore = 0;
+    /**
+     * One channel's filter network in struct-of-arrays form: every comb and allpass
+     * delay line lives back to back in a single buffer and the whole network
+     * (2 allpasses of pre-diffusion, the parallel combs, remaining allpasses in series)
+     * runs per sample in one pass, instead of one pass over the block per filter.
+     * Callers add Denormal.OFFSET to the input, which keeps every comb and allpass
+     * out of the subnormal range without per-sample checks.
+     */
+    private static final class Network {
+        private static final float ALLPASS_FEEDBACK = 0.6f;
+        private static final int PRE_ALLPASSES = 2;
+
+        final int combs;
+        final int allpasses;
+        final int pre;
+        final float[] buffer;
+        // comb lines first, then allpass lines
+        final int[] start;
+        final int[] end;
+        final int[] pos;
+        final float[] filterstore;
+        float feedback; // roomsize
         float damp1;
         float damp2;
-        float[] buffer;
-        final int bufsize;
-        int bufidx = 0;
-
-        public Comb(int size) {
-            bufsize = Math.max(1, size);
-            reset();
-        }
-
-        public void reset() {
-            buffer = new float[bufsize];
-            bufidx = 0;
-            filterstore = 0;
-        }
-
-        public void processMix(float inputs[], float outputs[]) {
-            for (int i = 0; i < N_FRAMES; i++) {
-                float output = buffer[bufidx];
 
-                // undenormalise
-                if (output > 0.0f && output < 1.0E-9f)
-                    output = 0;
-                if (output < 0.0f && output > -1.0E-9f)
-                    output = 0;
-
-                filterstore = (output * damp2) + (filterstore * damp1);
-                // undenormalise(filterstore);
-                if (filterstore > 0.0f && filterstore < 1.0E-9f)
-                    filterstore = 0;
-                else if (filterstore < 0.0f && filterstore > -1.0E-9f)
-                    filterstore = 0;
-
-                buffer[bufidx] = inputs[i] + (filterstore * feedback);
-
-                if (++bufidx >= bufsize)
-                    bufidx = 0;
-
-                outputs[i] += output;
+        Network(int[] combSizes, int[] allpassSizes) {
+            combs = combSizes.length;
+            allpasses = allpassSizes.length;
+            pre = Math.min(PRE_ALLPASSES, allpasses);
+            int lines = combs + allpasses;
+            start = new int[lines];
+            end = new int[lines];
+            pos = new int[lines];
+            filterstore = new float[combs];
+            int total = 0;
+            for (int i = 0; i < lines; i++) {
+                int size = Math.max(1, i < combs ? combSizes[i] : allpassSizes[i - combs]);
+                start[i] = pos[i] = total;
+                total += size;
+                end[i] = total;
             }
+            buffer = new float[total];
         }
 
-        public void setdamp(float val) {
-            damp1 = val;
-            damp2 = 1 - val;
+        void setComb(float roomsize, float damp) {
+            feedback = roomsize;
+            damp1 = damp;
+            damp2 = 1 - damp;
         }
 
-    }
-
-    private class Allpass {
-
-        @Setter float feedback = 0.5f;
-        float[] buffer;
-        int bufidx = 0;
-        final int size;
+        /** @return wet output for one (pre-scaled) input sample */
+        float tick(float input) {
+            final float[] buf = buffer;
+            final int[] p = pos;
+            for (int a = combs; a < combs + pre; a++)
+                input = allpass(buf, p, a, input);
+
+            final float fb = feedback;
+            final float d1 = damp1;
+            final float d2 = damp2;
+            float out = 0;
+            for (int c = 0; c < combs; c++) {
+                int i = p[c];
+                float output = buf[i];
+                float store = (output * d2) + (filterstore[c] * d1);
+                filterstore[c] = store;
+                buf[i] = input + (store * fb);
+                p[c] = ++i >= end[c] ? start[c] : i;
+                out += output;
+            }
 
-        public Allpass(int size) {
-            this.size = Math.max(1, size);
-            reset();
+            for (int a = combs + pre; a < combs + allpasses; a++)
+                out = allpass(buf, p, a, out);
+            return out;
         }
 
-        public void reset() {
-            buffer = new float[size];
-            bufidx = 0;
+        private float allpass(float[] buf, int[] p, int a, float input) {
+            int i = p[a];
+            float delayed = buf[i];
+            buf[i] = input + delayed * ALLPASS_FEEDBACK;
+            p[a] = ++i >= end[a] ? start[a] : i;
+            return -input + delayed;
         }
 
-        public void processReplace(float inputs[], float outputs[]) {
-            float input;
-            for (int i = 0; i < N_FRAMES; i++) {
-
-                // undenormalise
-                if (buffer[bufidx] > 0 && buffer[bufidx] < 1.0E-9)
-                    buffer[bufidx] = 0;
-                else if (buffer[bufidx] < 0.0 && buffer[bufidx] > -1.0E-9)
-                    buffer[bufidx] = 0;
-
-                input = inputs[i];
-                outputs[i] = -input + buffer[bufidx];
-                buffer[bufidx] = input + buffer[bufidx] * feedback;
-                if (++bufidx >= size) {
-                    bufidx = 0;
-                }
-            }
+        void reset() {
+            Arrays.fill(buffer, 0f);
+            Arrays.fill(filterstore, 0f);
+            System.arraycopy(start, 0, pos, 0, pos.length);
         }
-   }
+    }
 
     @Override
     public void reset() {
-        for (Allpass l : allpassL)
-            l.reset();
-        for (Comb l : combL)
-            l.reset();
-        for (Allpass r : allpassR)
-            r.reset();
-        for (Comb r : combR)
-            r.reset();
+        left.reset();
+        right.reset();
+        if (early != null)
+            early.reset();
     }
 
 }
@@ -0,0 +1,20 @@
+package judahzone.fx;
+
+/**
+ * Optional per-sample form of a stateless or one-pole effect.  StereoBus runs consecutive
+ * Fusable effects of its active chain as one loop over the buffer (see FusedChain) instead
+ * of one memory pass per effect.  begin() plus frame() for every sample must produce the
+ * same output as process().
+ */
+public interface Fusable extends Tailless {
+
+    /** Once per block on the RT thread, before the frames: read parameters, set up ramps. */
+    void begin(int frames, boolean stereo);
+
+    /**
+     * Process one frame in place.
+     * @param lr lr[0] left, lr[1] right (ignore in mono)
+     * @param i frame index within the block, called in order from 0 */
+    void frame(float[] lr, int i);
+
+}
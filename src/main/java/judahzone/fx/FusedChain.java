@@ -0,0 +1,49 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/** Consecutive Fusable effects of a StereoBus chain, one loop over the buffer for all of them. */
+final class FusedChain implements Tailless {
+
+    private final Fusable[] stages;
+    private final String name;
+    private final float[] lr = new float[2];
+
+    FusedChain(List<Fusable> run) {
+        stages = run.toArray(new Fusable[0]);
+        StringBuilder sb = new StringBuilder("Fused");
+        for (Fusable fx : stages)
+            sb.append(' ').append(fx.getName());
+        name = sb.toString();
+    }
+
+    @Override public String getName() { return name; }
+    @Override public int getParamCount() { return 0; }
+    @Override public int get(int idx) { throw new InvalidParameterException("" + idx); }
+    @Override public void set(int idx, int value) { throw new InvalidParameterException("" + idx); }
+
+    int size() {
+        return stages.length;
+    }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        final boolean stereo = right != null;
+        final int frames = stereo ? Math.min(N_FRAMES, Math.min(left.length, right.length)) : Math.min(N_FRAMES, left.length);
+        final Fusable[] fx = stages;
+        final float[] frame = lr;
+        for (Fusable s : fx)
+            s.begin(frames, stereo);
+        for (int i = 0; i < frames; i++) {
+            frame[0] = left[i];
+            frame[1] = stereo ? right[i] : 0f;
+            for (Fusable s : fx)
+                s.frame(frame, i);
+            left[i] = frame[0];
+            if (stereo)
+                right[i] = frame[1];
+        }
+    }
+
+}
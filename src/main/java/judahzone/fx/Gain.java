@@ -2,12 +2,11 @@ package judahzone.fx;
 
 import java.security.InvalidParameterException;
 
-import judahzone.api.FX.RTFX;
 import judahzone.util.Constants;
 import lombok.Getter;
 import lombok.Setter;
 
-public class Gain implements RTFX {
+public class Gain implements Fusable, Tileable {
 
 	public enum Settings {VOLUME, PAN};
 
@@ -20,12 +19,18 @@ public class Gain implements RTFX {
 	private float stereo = 0.5f;
 	@Setter @Getter private float preamp = 1f;
 
-	/** Last effective left/right gains used in preamp() (preamp * pan). */
-	private float preCurrentL = 1f;
-	private float preCurrentR = 1f;
+	/** Effective left/right gains used in preamp() (preamp * pan), moved at control rate. */
+	private final Smoother preL = new Smoother(1f);
+	private final Smoother preR = new Smoother(1f);
 
-	/** Last effective post-fader gain used in post(). (linear multiplier) */
-	private float postCurrent = 1f;
+	/** Effective post-fader gain used in post(). (linear multiplier) */
+	private final Smoother post = new Smoother(1f);
+
+	// fused ramp state, see frame()
+	private int frames;
+	private boolean stereoFrames;
+	private int nextTick;
+	private float mL, mR, stepL, stepR;
 
 	public float getGain() {
 	    return 2 * gain;
@@ -84,65 +89,89 @@ public class Gain implements RTFX {
 	/**
 	 * Apply Gain as a single combined preamp(pan) + post(fader) smoothing pass.
 	 *
-	 * Behavior mirrors the original FloatBuffer implementation but operates on float[].
+	 * Targets are ramped at control rate (see Smoother), the combined multiplier is
+	 * interpolated linearly across each control block.
 	 * In mono mode (right == null) the left buffer is processed and preamp pan target is used.
 	 * For stereo the number of frames processed is the minimum of left.length and right.length.
 	 */
 	@Override
 	public void process(float[] left, float[] right) {
 	    if (left == null) return;
+	    process(left, right, 0, right == null ? left.length : Math.min(left.length, right.length));
+	}
 
+	@Override
+	public void process(float[] left, float[] right, int from, int to) {
+	    preL.set(getLeft());
+	    post.set(gainToLinear());
 	    if (right == null) {
 	        // Mono: apply combined ramp for preamp * gain (gain mapped to linear multiplier)
-	        float targetPre = getLeft(); // in mono, use left pan target (includes preamp)
-	        float targetPost = gainToLinear();
-	        int n = left.length;
-	        if (n <= 0) return;
-	        float stepPre = (targetPre - preCurrentL) / n;
-	        float stepPost = (targetPost - postCurrent) / n;
-	        float curPre = preCurrentL;
-	        float curPost = postCurrent;
-	        for (int i = 0; i < n; i++) {
-	            float m = curPre * curPost;
-	            left[i] = left[i] * m;
-	            curPre += stepPre;
-	            curPost += stepPost;
+	        for (int start = from; start < to; start += Smoother.CONTROL) {
+	            preL.tick();
+	            post.tick();
+	            int end = Math.min(start + Smoother.CONTROL, to);
+	            float m = preL.last() * post.last();
+	            float step = (preL.value() * post.value() - m) / (end - start);
+	            for (int i = start; i < end; i++) {
+	                m += step;
+	                left[i] = left[i] * m;
+	            }
 	        }
-	        preCurrentL = targetPre;
-	        preCurrentR = targetPre;
-	        postCurrent = targetPost;
+	        preR.snap(preL.value());
 	        return;
 	    }
 
 	    // stereo
-	    float targetPreL = getLeft();
-	    float targetPreR = getRight();
-	    float targetPost = gainToLinear();
-
-	    int n = Math.min(left.length, right.length);
-	    if (n <= 0) return;
-
-	    float stepPreL = (targetPreL - preCurrentL) / n;
-	    float stepPreR = (targetPreR - preCurrentR) / n;
-	    float stepPost = (targetPost - postCurrent) / n;
-
-	    float curPreL = preCurrentL;
-	    float curPreR = preCurrentR;
-	    float curPost = postCurrent;
-
-	    for (int i = 0; i < n; i++) {
-	        float mL = curPreL * curPost;
-	        float mR = curPreR * curPost;
-	        left[i] = left[i] * mL;
-	        right[i] = right[i] * mR;
-	        curPreL += stepPreL;
-	        curPreR += stepPreR;
-	        curPost += stepPost;
+	    preR.set(getRight());
+	    for (int start = from; start < to; start += Smoother.CONTROL) {
+	        preL.tick();
+	        preR.tick();
+	        post.tick();
+	        int end = Math.min(start + Smoother.CONTROL, to);
+	        float mL = preL.last() * post.last();
+	        float mR = preR.last() * post.last();
+	        float stepL = (preL.value() * post.value() - mL) / (end - start);
+	        float stepR = (preR.value() * post.value() - mR) / (end - start);
+	        for (int i = start; i < end; i++) {
+	            mL += stepL;
+	            mR += stepR;
+	            left[i] = left[i] * mL;
+	            right[i] = right[i] * mR;
+	        }
 	    }
+	}
 
-	    preCurrentL = targetPreL;
-	    preCurrentR = targetPreR;
-	    postCurrent = targetPost;
+	@Override
+	public void begin(int frames, boolean stereo) {
+	    this.frames = frames;
+	    stereoFrames = stereo;
+	    nextTick = 0;
+	    preL.set(getLeft());
+	    post.set(gainToLinear());
+	    if (stereo)
+	        preR.set(getRight());
+	    else
+	        preR.snap(preL.getTarget());
+	}
+
+	/** same ramps as process(), advanced one control block every Smoother.CONTROL frames */
+	@Override
+	public void frame(float[] lr, int i) {
+	    if (i == nextTick) {
+	        preL.tick();
+	        preR.tick();
+	        post.tick();
+	        int end = Math.min(i + Smoother.CONTROL, frames);
+	        mL = preL.last() * post.last();
+	        mR = preR.last() * post.last();
+	        stepL = (preL.value() * post.value() - mL) / (end - i);
+	        stepR = stereoFrames ? (preR.value() * post.value() - mR) / (end - i) : 0;
+	        nextTick = end;
+	    }
+	    mL += stepL;
+	    mR += stepR;
+	    lr[0] *= mL;
+	    lr[1] *= mR;
 	}
 
 	/**
@@ -159,36 +188,47 @@ public class Gain implements RTFX {
 	/** preamp and panning, with smoothing, stereo only */
 	public void preamp(float[] left, float[] right) {
 	    if (left == null || right == null) return;
-	    float targetL = getLeft();
-	    float targetR = getRight();
+	    preL.set(getLeft());
+	    preR.set(getRight());
 	    int frames = Constants.bufSize();
-	    ramp(left, frames, preCurrentL, targetL);
-	    ramp(right, frames, preCurrentR, targetR);
-	    preCurrentL = targetL;
-	    preCurrentR = targetR;
+	    ramp(left, frames, preL);
+	    ramp(right, frames, preR);
 	}
 
 	/** gain only, with smoothing, stereo only */
 	public void post(float[] left, float[] right) {
 	    if (left == null || right == null) return;
-	    float target = gainToLinear();
+	    post.set(gainToLinear());
 	    int frames = Constants.bufSize();
-	    ramp(left, frames, postCurrent, target);
-	    ramp(right, frames, postCurrent, target);
-	    postCurrent = target;
+	    int n = Math.min(frames, Math.min(left.length, right.length));
+	    for (int start = 0; start < n; start += Smoother.CONTROL) {
+	        post.tick();
+	        int end = Math.min(start + Smoother.CONTROL, n);
+	        float g = post.last();
+	        float step = (post.value() - g) / (end - start);
+	        for (int i = start; i < end; i++) {
+	            g += step;
+	            left[i] *= g;
+	            right[i] *= g;
+	        }
+	    }
 	}
 
-	// apply a linear ramp from start→end over up to 'frames' samples (bounded by buf.length)
-	private static void ramp(float[] buf, int frames, float startGain, float endGain) {
+	// apply the smoothed gain over up to 'frames' samples (bounded by buf.length), linear within each control block
+	private static void ramp(float[] buf, int frames, Smoother gain) {
 	    if (frames <= 0 || buf == null || buf.length == 0) {
 	        return;
 	    }
 	    int n = Math.min(frames, buf.length);
-	    float step = (endGain - startGain) / n;
-	    float g = startGain;
-	    for (int i = 0; i < n; i++) {
-	        buf[i] *= g;
-	        g += step;
+	    for (int start = 0; start < n; start += Smoother.CONTROL) {
+	        gain.tick();
+	        int end = Math.min(start + Smoother.CONTROL, n);
+	        float g = gain.last();
+	        float step = (gain.value() - g) / (end - start);
+	        for (int i = start; i < end; i++) {
+	            g += step;
+	            buf[i] *= g;
+	        }
 	    }
 	}
 
@@ -197,9 +237,9 @@ public class Gain implements RTFX {
 	    gain = 0.5f;
 	    stereo = 0.5f;
 	    preamp = 1f;
-	    preCurrentL = 1f;
-	    preCurrentR = 1f;
-	    postCurrent = 1f;
+	    preL.snap(1f);
+	    preR.snap(1f);
+	    post.snap(1f);
 	}
 
 	// Helpers for dB <-> linear
@@ -0,0 +1,221 @@
+package judahzone.fx;
+
+import static java.lang.Math.abs;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+import judahzone.api.FX;
+import judahzone.util.Constants;
+import lombok.Getter;
+
+/**
+ * Noise gate / downward expander, stereo linked.
+ *
+ * Envelope as in Compressor's control-rate path: a per-sample peak detector, the gain
+ * computer once every {@link Smoother#CONTROL} samples and the gain interpolated linearly
+ * in between.  Below the threshold the level is pushed down by (ratio - 1) dB per dB, at
+ * most Range dB; Range at {@link #MAX_RANGE} mutes.  Hold keeps the gate open after the
+ * level drops, attack (opening) and release (closing) smooth the gain per control block,
+ * so reopening is a ramp of at least one control block, never a step.
+ *
+ * Once muted for a whole block the buffers are zeroed and {@link #isClosed()} is true:
+ * StereoBus then skips the {@link Tailless} effects behind the gate.
+ */
+public class Gate implements FX.RTFX {
+
+    public enum Settings {
+        Threshold, Ratio, Range, Attack, Hold, Release
+    }
+
+    /** dB */
+    static final float MIN_THRESHOLD = -80f;
+    /** dB of attenuation, at this setting the gate mutes */
+    static final float MAX_RANGE = 80f;
+    static final float MAX_RATIO = 21f;
+    /** seconds */
+    static final float MIN_ATTACK = 0.0001f;
+    static final float MAX_ATTACK = 0.05f;
+    static final float MAX_HOLD = 0.5f;
+    static final float MIN_RELEASE = 0.005f;
+    static final float MAX_RELEASE = 2f;
+    // detector fall time, seconds
+    private static final float DETECT = 0.01f;
+    // below this a muting gain snaps to 0
+    private static final float FLOOR = 0.0001f;
+
+    @Getter private final String name = Gate.class.getSimpleName();
+    @Getter private final int paramCount = Settings.values().length;
+
+    /** dB */
+    @Getter private float threshold = -50f;
+    @Getter private float ratio = MAX_RATIO;
+    /** dB */
+    @Getter private float range = MAX_RANGE;
+    /** seconds */
+    @Getter private float attack = 0.001f;
+    @Getter private float hold = 0.05f;
+    @Getter private float release = 0.1f;
+    /** muted for the whole of the last block, output was zeros */
+    @Getter private volatile boolean closed;
+
+    private final float detectDecay = (float) Math.exp(-1.0 / (DETECT * SAMPLE_RATE));
+    private float attCoef, relCoef;
+    private int holdSamples;
+
+    private float level;
+    private float gain;
+    private int holdLeft;
+
+    public Gate() {
+        setAttack(attack);
+        setRelease(release);
+        setHold(hold);
+        reset();
+    }
+
+    @Override
+    public int get(int idx) {
+        if (idx == Settings.Threshold.ordinal())
+            return Math.round((threshold - MIN_THRESHOLD) / -MIN_THRESHOLD * 100);
+        if (idx == Settings.Ratio.ordinal())
+            return Math.round((ratio - 1) / (MAX_RATIO - 1) * 100);
+        if (idx == Settings.Range.ordinal())
+            return Math.round(range / MAX_RANGE * 100);
+        if (idx == Settings.Attack.ordinal())
+            return Constants.reverseLog(attack, MIN_ATTACK, MAX_ATTACK);
+        if (idx == Settings.Hold.ordinal())
+            return Math.round(hold / MAX_HOLD * 100);
+        if (idx == Settings.Release.ordinal())
+            return Constants.reverseLog(release, MIN_RELEASE, MAX_RELEASE);
+        throw new InvalidParameterException("idx: " + idx);
+    }
+
+    @Override
+    public void set(int idx, int value) {
+        if (idx == Settings.Threshold.ordinal())
+            setThreshold(MIN_THRESHOLD - MIN_THRESHOLD * value * 0.01f);
+        else if (idx == Settings.Ratio.ordinal())
+            setRatio(1 + (MAX_RATIO - 1) * value * 0.01f);
+        else if (idx == Settings.Range.ordinal())
+            setRange(MAX_RANGE * value * 0.01f);
+        else if (idx == Settings.Attack.ordinal())
+            setAttack(Constants.logarithmic(value, MIN_ATTACK, MAX_ATTACK));
+        else if (idx == Settings.Hold.ordinal())
+            setHold(MAX_HOLD * value * 0.01f);
+        else if (idx == Settings.Release.ordinal())
+            setRelease(Constants.logarithmic(value, MIN_RELEASE, MAX_RELEASE));
+        else
+            throw new InvalidParameterException("Gate set " + idx + "?  val: " + value);
+    }
+
+    /** @param dB {@link #MIN_THRESHOLD} to 0 */
+    public void setThreshold(float dB) {
+        threshold = dB < MIN_THRESHOLD ? MIN_THRESHOLD : dB > 0 ? 0 : dB;
+    }
+
+    /** @param r 1 (off) to {@link #MAX_RATIO} (gate) */
+    public void setRatio(float r) {
+        ratio = r < 1 ? 1 : r > MAX_RATIO ? MAX_RATIO : r;
+    }
+
+    /** @param dB most attenuation, 0 to {@link #MAX_RANGE} (mute) */
+    public void setRange(float dB) {
+        range = dB < 0 ? 0 : dB > MAX_RANGE ? MAX_RANGE : dB;
+    }
+
+    /** @param seconds opening time constant */
+    public void setAttack(float seconds) {
+        attack = seconds < MIN_ATTACK ? MIN_ATTACK : seconds > MAX_ATTACK ? MAX_ATTACK : seconds;
+        attCoef = blockCoef(attack);
+    }
+
+    /** @param seconds time the gate stays open after the level drops */
+    public void setHold(float seconds) {
+        hold = seconds < 0 ? 0 : seconds > MAX_HOLD ? MAX_HOLD : seconds;
+        holdSamples = Math.round(hold * SAMPLE_RATE);
+    }
+
+    /** @param seconds closing time constant */
+    public void setRelease(float seconds) {
+        release = seconds < MIN_RELEASE ? MIN_RELEASE : seconds > MAX_RELEASE ? MAX_RELEASE : seconds;
+        relCoef = blockCoef(release);
+    }
+
+    // one-pole coefficient for one step per control block
+    private static float blockCoef(float seconds) {
+        return 1f - (float) Math.exp(-Smoother.CONTROL / (seconds * SAMPLE_RATE));
+    }
+
+    @Override
+    public void reset() {
+        level = 0;
+        gain = 0;
+        holdLeft = 0;
+        closed = false;
+    }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        final boolean stereo = right != null;
+        final float decay = detectDecay;
+        final boolean mute = range >= MAX_RANGE;
+        final float slope = ratio - 1;
+        float lvl = level;
+        float g = gain;
+        boolean shut = true;
+
+        for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+            final int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+            for (int z = start; z < end; z++) {
+                float x = abs(left[z]) + Denormal.OFFSET;
+                if (stereo)
+                    x = Math.max(x, abs(right[z]));
+                lvl = x > lvl ? x : lvl * decay;
+            }
+
+            // gain computer
+            final float db = FastMath.rap2dB(lvl);
+            float target;
+            if (db >= threshold) {
+                holdLeft = holdSamples;
+                target = 1f;
+            } else if (holdLeft > 0) {
+                holdLeft -= end - start;
+                target = 1f;
+            } else {
+                float down = (threshold - db) * slope;
+                target = down >= range ? (mute ? 0f : FastMath.dB2rap(-range)) : FastMath.dB2rap(-down);
+            }
+            final float from = g;
+            g += (target - g) * (target > g ? attCoef : relCoef);
+            if (target == 0f && g < FLOOR)
+                g = 0f;
+
+            if (from == 0f && g == 0f) {
+                Arrays.fill(left, start, end, 0f);
+                if (stereo)
+                    Arrays.fill(right, start, end, 0f);
+                continue;
+            }
+            shut = false;
+            final float step = (g - from) / (end - start);
+            float m = from;
+            if (stereo)
+                for (int z = start; z < end; z++) {
+                    m += step;
+                    left[z] *= m;
+                    right[z] *= m;
+                }
+            else
+                for (int z = start; z < end; z++) {
+                    m += step;
+                    left[z] *= m;
+                }
+        }
+        level = lvl;
+        gain = g;
+        closed = shut;
+    }
+
+}
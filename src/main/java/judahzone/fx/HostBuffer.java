@@ -0,0 +1,43 @@
+package judahzone.fx;
+
+import java.nio.FloatBuffer;
+
+/**
+ * One channel of host (audio driver) memory, moved in and out of a bus in a single bulk
+ * transfer per cycle.  Direct FloatBuffers, such as JACK port buffers, are read and written
+ * with absolute bulk get/put: a native memcpy straight between port memory and the bus's
+ * own arrays, no intermediate Java array, no position changes (a port may be read by
+ * several buses in the same cycle).
+ */
+public interface HostBuffer {
+
+    /** copy dst.length samples out of the host buffer, starting at frame 'offset' */
+    void get(int offset, float[] dst);
+
+    /** copy src into the host buffer at frame 'offset' */
+    void put(int offset, float[] src);
+
+    default void get(float[] dst) {
+        get(0, dst);
+    }
+
+    default void put(float[] src) {
+        put(0, src);
+    }
+
+    static HostBuffer of(FloatBuffer port) {
+        return new HostBuffer() {
+            @Override public void get(int offset, float[] dst) { port.get(offset, dst); }
+            @Override public void put(int offset, float[] src) { port.put(offset, src); }
+        };
+    }
+
+    /** the float[] path, for hosts that already hand over arrays */
+    static HostBuffer of(float[] array) {
+        return new HostBuffer() {
+            @Override public void get(int offset, float[] dst) { System.arraycopy(array, offset, dst, 0, dst.length); }
+            @Override public void put(int offset, float[] src) { System.arraycopy(src, 0, array, offset, src.length); }
+        };
+    }
+
+}
@@ -0,0 +1,21 @@
+package judahzone.fx;
+
+import judahzone.api.FX.RTFX;
+
+/**
+ * An effect with more state than one cycle should zero (seconds of delay line).  Its reset()
+ * is O(1) and only marks the state stale; StereoBus then zeroes it {@link #WIPE} samples per
+ * cycle on the RT thread after the effect leaves the chain.  Switched back on before that
+ * is done, process() keeps wiping at the same rate and reads the stale rest as silence.
+ */
+public interface LazyReset extends RTFX {
+
+    /** samples zeroed per cycle, 64 KB */
+    int WIPE = 1 << 14;
+
+    /**
+     * Zero up to 'samples' more of the stale state.
+     * @return true when clean */
+    boolean clear(int samples);
+
+}
@@ -0,0 +1,233 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+import judahzone.api.FX;
+import judahzone.util.Constants;
+import lombok.Getter;
+
+/**
+ * Look-ahead brickwall limiter, stereo linked.
+ *
+ * Per sample the gain needed to keep the peak under the ceiling enters a sliding-window
+ * minimum (monotonic deque on primitive arrays, O(1) amortized) held for the look-ahead,
+ * then a box average of the same length: the gain has reached its target exactly when the
+ * delayed peak comes out, so nothing passes the ceiling.  Release is one pole upwards.
+ * Optional true-peak detection also checks 3 points between samples (4x, Catmull-Rom:
+ * an approximation of the ITU-R BS.1770 interpolator, keep a little ceiling margin).
+ *
+ * Latency is constant, {@link #getLatency()} samples, whether true-peak is on or not.
+ */
+public class Limiter implements FX.RTFX, Discrete {
+
+    public enum Settings {
+        Ceiling, Release, TruePeak
+    }
+
+    /** seconds */
+    public static final float LOOKAHEAD = 0.0015f;
+    static final float MIN_CEILING = -12f;
+    static final float MIN_RELEASE = 0.01f;
+    static final float MAX_RELEASE = 1f;
+    // detection runs 2 samples behind the input, between x[n-2] and x[n-1]
+    private static final int DETECT_DELAY = 2;
+
+    // Catmull-Rom weights for x[n-3], x[n-2], x[n-1], x[n] at 1/4, 1/2 and 3/4
+    private static final float Q0 = -0.0703125f, Q1 = 0.8671875f, Q2 = 0.2265625f, Q3 = -0.0234375f;
+    private static final float H0 = -0.0625f, H1 = 0.5625f;
+
+    @Getter private final String name = Limiter.class.getSimpleName();
+    @Getter private final int paramCount = Settings.values().length;
+
+    /** dB */
+    @Getter private float ceiling = -0.3f;
+    /** seconds */
+    @Getter private float release = 0.08f;
+    @Getter private boolean truePeak = true;
+    /** dB of the deepest reduction in the last block, for meters */
+    @Getter private volatile float reduction;
+
+    private final int window; // look-ahead + 1
+    private final int latency;
+    private float limit;
+    private float releaseCoef;
+
+    // audio delay, per channel
+    private final float[] delayL;
+    private final float[] delayR;
+    private final int delayMask;
+    // sliding minimum of required gain: indexes and values, masked ring deque
+    private final int[] dequeAt;
+    private final float[] dequeGain;
+    private final int dequeMask;
+    private int head, tail;
+    // box average of the held minimum
+    private final float[] box;
+    private final int boxMask;
+    private double boxSum;
+    // detector history, x[n-3] .. x[n-1] per channel
+    private float l3, l2, l1, r3, r2, r1;
+    private float gain = 1f;
+    // running sample index; differences and ring masks stay valid when it wraps
+    private int n;
+
+    public Limiter() {
+        int lookahead = Math.max(1, Math.round(LOOKAHEAD * SAMPLE_RATE));
+        window = lookahead + 1;
+        latency = lookahead + DETECT_DELAY;
+        int delaySize = Integer.highestOneBit(latency * 2 + 1);
+        delayL = new float[delaySize];
+        delayR = new float[delaySize];
+        delayMask = delaySize - 1;
+        int ring = Integer.highestOneBit(window * 2 + 1);
+        dequeAt = new int[ring];
+        dequeGain = new float[ring];
+        dequeMask = ring - 1;
+        box = new float[ring];
+        boxMask = ring - 1;
+        setCeiling(ceiling);
+        setRelease(release);
+        reset();
+    }
+
+    /** @return samples of delay added to the signal */
+    public int getLatency() {
+        return latency;
+    }
+
+    @Override
+    public boolean isDiscrete(int idx) {
+        return idx == Settings.TruePeak.ordinal();
+    }
+
+    @Override
+    public int get(int idx) {
+        if (idx == Settings.Ceiling.ordinal())
+            return Math.round((ceiling - MIN_CEILING) / -MIN_CEILING * 100);
+        if (idx == Settings.Release.ordinal())
+            return Constants.reverseLog(release, MIN_RELEASE, MAX_RELEASE);
+        if (idx == Settings.TruePeak.ordinal())
+            return truePeak ? 1 : 0;
+        throw new InvalidParameterException("" + idx);
+    }
+
+    @Override
+    public void set(int idx, int value) {
+        if (idx == Settings.Ceiling.ordinal())
+            setCeiling(MIN_CEILING - MIN_CEILING * value * 0.01f);
+        else if (idx == Settings.Release.ordinal())
+            setRelease(Constants.logarithmic(value, MIN_RELEASE, MAX_RELEASE));
+        else if (idx == Settings.TruePeak.ordinal())
+            truePeak = value > 0;
+        else throw new InvalidParameterException("" + idx);
+    }
+
+    /** @param dB {@link #MIN_CEILING} to 0 */
+    public void setCeiling(float dB) {
+        ceiling = dB < MIN_CEILING ? MIN_CEILING : dB > 0 ? 0 : dB;
+        limit = FastMath.dB2rap(ceiling);
+    }
+
+    /** @param seconds time constant of the gain recovery */
+    public void setRelease(float seconds) {
+        release = seconds < MIN_RELEASE ? MIN_RELEASE : seconds > MAX_RELEASE ? MAX_RELEASE : seconds;
+        releaseCoef = 1f - (float) Math.exp(-1.0 / (release * SAMPLE_RATE));
+    }
+
+    public void setTruePeak(boolean on) {
+        truePeak = on;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(delayL, 0f);
+        Arrays.fill(delayR, 0f);
+        Arrays.fill(box, 1f);
+        boxSum = window;
+        head = tail = 0;
+        l3 = l2 = l1 = r3 = r2 = r1 = 0;
+        gain = 1f;
+        n = 0;
+        reduction = 0;
+    }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        final boolean stereo = right != null;
+        final boolean tp = truePeak;
+        final float lim = limit;
+        final float rel = releaseCoef;
+        final int w = window;
+        final float norm = 1f / w;
+        final float[] dl = delayL, dr = delayR;
+        final int[] at = dequeAt;
+        final float[] dg = dequeGain;
+        final float[] bx = box;
+        float g = gain;
+        float lowest = 1f;
+
+        for (int i = 0; i < N_FRAMES; i++) {
+            final float xl = left[i];
+            final float xr = stereo ? right[i] : 0f;
+
+            // peak between x[n-2] and x[n-1], linked
+            float peak = Math.max(Math.abs(l2), Math.abs(r2));
+            if (tp) {
+                peak = Math.max(peak, Math.max(interpolated(l3, l2, l1, xl), interpolated(r3, r2, r1, xr)));
+            }
+            l3 = l2; l2 = l1; l1 = xl;
+            r3 = r2; r2 = r1; r1 = xr;
+            final float required = peak > lim ? lim / peak : 1f;
+
+            // sliding minimum over the window
+            while (tail != head && dg[(tail - 1) & dequeMask] >= required)
+                tail--;
+            at[tail & dequeMask] = n;
+            dg[tail & dequeMask] = required;
+            tail++;
+            if (n - at[head & dequeMask] >= w)
+                head++;
+            final float held = dg[head & dequeMask];
+
+            // box average of the held minimum
+            final int slot = n & boxMask;
+            final int old = (n - w) & boxMask;
+            boxSum += held - bx[old];
+            bx[slot] = held;
+            final float target = (float) (boxSum * norm);
+
+            // attack follows the ramp, release is one pole up
+            g = target < g ? target : g + (target - g) * rel;
+            if (g < lowest)
+                lowest = g;
+
+            // delayed audio out
+            final int d = n & delayMask;
+            final int o = (n - latency) & delayMask;
+            dl[d] = xl;
+            left[i] = dl[o] * g;
+            if (stereo) {
+                dr[d] = xr;
+                right[i] = dr[o] * g;
+            }
+            n++;
+        }
+        gain = g;
+        reduction = FastMath.rap2dB(lowest);
+        // re-add the window so rounding in the running sum never accumulates
+        double sum = 0;
+        for (int k = 1; k <= w; k++)
+            sum += bx[(n - k) & boxMask];
+        boxSum = sum;
+    }
+
+    /** largest |x| at 1/4, 1/2 and 3/4 between x0 and x1 */
+    private static float interpolated(float xm1, float x0, float x1, float x2) {
+        float q = Math.abs(Q0 * xm1 + Q1 * x0 + Q2 * x1 + Q3 * x2);
+        float h = Math.abs(H0 * (xm1 + x2) + H1 * (x0 + x1));
+        float t = Math.abs(Q3 * xm1 + Q2 * x0 + Q1 * x1 + Q0 * x2);
+        return Math.max(q, Math.max(h, t));
+    }
+
+}
@@ -0,0 +1,213 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+
+import judahzone.api.FX;
+import judahzone.api.TimeFX;
+import judahzone.util.Constants;
+import lombok.Getter;
+
+/**
+ * Per-bus modulation: {@link Modulator} sources routed to the integer parameters of the
+ * bus's effects, evaluated and applied on the RT thread before the chain runs.  Only
+ * continuous parameters may be routed, not the ones a {@link Discrete} effect selects with.
+ *
+ * Sources advance once per {@link Smoother#CONTROL} samples (envelopes follow the bus input
+ * block by block), then every modulated parameter gets knob + sum(depth * source) in one
+ * set() per audio block and only when the rounded value moved, so coefficients are
+ * recomputed at a fixed rate on the thread that uses them and each effect's own smoothing
+ * takes care of the steps.  A source may feed any number of routes, on any number of effects.
+ *
+ * Routes are edited on the GUI thread and published as one immutable patch.  A parameter
+ * that loses its last route is set back to its knob position by the RT thread as well.
+ */
+public class ModMatrix {
+
+    private static final int N_FRAMES = Constants.bufSize();
+
+    /** One source to one parameter. */
+    public static final class Route {
+        @Getter private final Modulator source;
+        @Getter private final FX fx;
+        @Getter private final int param;
+        /** parameter units at source value 1 */
+        @Getter private volatile float depth;
+        private volatile Target target;
+
+        private Route(Modulator source, FX fx, int param, float depth) {
+            this.source = source;
+            this.fx = fx;
+            this.param = param;
+            this.depth = depth;
+        }
+
+        public void setDepth(float depth) {
+            this.depth = depth;
+        }
+    }
+
+    // a modulated parameter: knob position and last value sent
+    private static final class Target {
+        final FX fx;
+        final int param;
+        volatile int base;
+        float sum;
+        int applied = Integer.MIN_VALUE;
+        // no longer routed: set back to base once
+        volatile boolean restored;
+
+        Target(FX fx, int param, int base) {
+            this.fx = fx;
+            this.param = param;
+            this.base = base;
+        }
+    }
+
+    private record Patch(Modulator[] sources, Route[] routes, Target[] targets, Target[] restore) {}
+
+    private static final Patch EMPTY = new Patch(new Modulator[0], new Route[0], new Target[0], new Target[0]);
+
+    private final ArrayList<Route> edit = new ArrayList<>();
+    private volatile Patch patch = EMPTY;
+
+    /**
+     * @param depth parameter units (of its 0 to 100 scale) added at source value 1
+     * @return the route, to change depth or remove it */
+    public Route add(Modulator source, FX fx, int param, float depth) {
+        if (param < 0 || param >= fx.getParamCount())
+            throw new InvalidParameterException(fx.getName() + " " + param);
+        if (fx instanceof Discrete d && d.isDiscrete(param))
+            throw new InvalidParameterException(fx.getName() + " " + param + " is not continuous");
+        Route r = new Route(source, fx, param, depth);
+        edit.add(r);
+        publish();
+        return r;
+    }
+
+    /** the parameter returns to its knob position (next block, on the RT thread) */
+    public void remove(Route r) {
+        if (edit.remove(r))
+            publish();
+    }
+
+    /** remove every route of an effect (effect removed from the bus) */
+    public void remove(FX fx) {
+        for (Route r : new ArrayList<>(edit))
+            if (r.fx == fx)
+                remove(r);
+    }
+
+    public List<Route> getRoutes() {
+        return new ArrayList<>(edit);
+    }
+
+    public boolean isModulated(FX fx, int param) {
+        for (Route r : edit)
+            if (r.fx == fx && r.param == param)
+                return true;
+        return false;
+    }
+
+    /** Knob position of a modulated parameter (a plain fx.set() would be overridden). */
+    public void setBase(FX fx, int param, int value) {
+        final Patch p = patch;
+        Target t = find(p.targets, fx, param);
+        if (t != null)
+            t.base = value;
+        else if ((t = find(p.restore, fx, param)) != null) {
+            t.base = value; // for a restore still pending, else as a plain set()
+            if (t.restored)
+                fx.set(param, value);
+        }
+        else
+            fx.set(param, value);
+    }
+
+    /** tempo for every synced source, see {@link TimeFX#sync(float)} */
+    public void sync(float unit) {
+        for (Modulator m : patch.sources)
+            if (m instanceof TimeFX time)
+                time.sync(unit);
+    }
+
+    // GUI thread: distinct sources and targets of the routes, a parameter keeps its Target (knob) while modulated,
+    // parameters no longer routed (and restores the RT thread has not run yet) go to restore with their knob
+    private void publish() {
+        final Patch old = patch;
+        ArrayList<Modulator> sources = new ArrayList<>();
+        ArrayList<Target> targets = new ArrayList<>();
+        for (Route r : edit) {
+            if (!sources.contains(r.source))
+                sources.add(r.source);
+            Target found = find(targets, r.fx, r.param);
+            if (found == null) {
+                found = find(old.targets, r.fx, r.param);
+                if (found == null) {
+                    Target pending = find(old.restore, r.fx, r.param);
+                    found = new Target(r.fx, r.param, pending == null || pending.restored
+                            ? r.fx.get(r.param) : pending.base);
+                }
+                targets.add(found);
+            }
+            r.target = found;
+        }
+        ArrayList<Target> restore = new ArrayList<>();
+        for (Target t : old.targets)
+            if (!targets.contains(t))
+                restore.add(new Target(t.fx, t.param, t.base));
+        for (Target t : old.restore)
+            if (!t.restored && find(targets, t.fx, t.param) == null)
+                restore.add(t);
+        patch = edit.isEmpty() && restore.isEmpty() ? EMPTY : new Patch(sources.toArray(new Modulator[0]),
+                edit.toArray(new Route[0]), targets.toArray(new Target[0]), restore.toArray(new Target[0]));
+    }
+
+    private static Target find(Iterable<Target> targets, FX fx, int param) {
+        for (Target t : targets)
+            if (t.fx == fx && t.param == param)
+                return t;
+        return null;
+    }
+
+    private static Target find(Target[] targets, FX fx, int param) {
+        return find(List.of(targets), fx, param);
+    }
+
+    /** RT thread, once per audio block before the effects: bus input for envelope sources. */
+    public void process(float[] left, float[] right) {
+        final Patch p = patch;
+        for (Target t : p.restore)
+            if (!t.restored) {
+                final int v = t.base;
+                t.fx.set(t.param, v);
+                t.restored = true;
+                if (t.base != v) // setBase() in between saw restored false
+                    t.fx.set(t.param, t.base);
+            }
+        final Route[] routes = p.routes;
+        if (routes.length == 0)
+            return;
+        final Modulator[] sources = p.sources;
+        for (int start = 0; start < N_FRAMES; start += Smoother.CONTROL) {
+            final int end = Math.min(start + Smoother.CONTROL, N_FRAMES);
+            for (Modulator m : sources)
+                m.tick(left, right, start, end);
+        }
+        final Target[] targets = p.targets;
+        for (Target t : targets)
+            t.sum = t.base;
+        for (Route r : routes)
+            r.target.sum += r.depth * r.source.value;
+        for (Target t : targets) {
+            int v = Math.round(t.sum);
+            v = v < 0 ? 0 : v > 100 ? 100 : v;
+            if (v != t.applied) {
+                t.applied = v;
+                t.fx.set(t.param, v);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+
+import judahzone.api.TimeFX;
+import judahzone.util.Constants;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Modulation source of a {@link ModMatrix}, advanced by the matrix once per
+ * {@link Smoother#CONTROL} samples on the RT thread.  One source may feed any number of
+ * routes; its value is computed once per control block no matter how many read it.
+ */
+public abstract class Modulator {
+
+    static final int SAMPLE_RATE = Constants.sampleRate();
+
+    /** -1 to 1 (LFO, Step) or 0 to 1 (Envelope), as of the last control block */
+    @Getter protected float value;
+
+    /** Advance one control block.  The bus input is given for sources that follow it. */
+    abstract void tick(float[] left, float[] right, int start, int end);
+
+    public void reset() {
+        value = 0;
+    }
+
+    /** seconds of a TimeFX note value, as Delay syncs its time */
+    static float seconds(float unit, String type) {
+        return 2 * 0.001f * (unit + unit * TimeFX.indexOf(type));
+    }
+
+    /** Low frequency oscillator, free running or one cycle per synced note value. */
+    public static final class LFO extends Modulator implements TimeFX {
+
+        public enum Shape { Sine, Triangle, Saw, Square, Random }
+
+        public static final float MIN_RATE = 0.01f;
+        public static final float MAX_RATE = 40f;
+
+        @Getter @Setter private Shape shape = Shape.Sine;
+        /** Hz */
+        @Getter private volatile float rate = 1f;
+        /** cycles, 0 to 1, added to the running phase */
+        @Getter @Setter private volatile float phase;
+        @Getter @Setter private boolean sync;
+        @Getter @Setter private String type = TYPE[1];
+
+        private float position; // cycles
+        private float held;
+        private int seed = 22222;
+
+        /** @param hz {@link #MIN_RATE} to {@link #MAX_RATE} */
+        public void setRate(float hz) {
+            if (hz < MIN_RATE || hz > MAX_RATE)
+                throw new InvalidParameterException("" + hz);
+            rate = hz;
+        }
+
+        @Override
+        public void sync(float unit) {
+            if (sync)
+                rate = Math.max(MIN_RATE, Math.min(MAX_RATE, 1f / seconds(unit, type)));
+        }
+
+        @Override
+        void tick(float[] left, float[] right, int start, int end) {
+            float p = position + rate * (end - start) / SAMPLE_RATE;
+            if (p >= 1f) {
+                p -= (int) p;
+                seed = seed * 196314165 + 907633515; // new sample and hold value per cycle
+                held = (seed >> 8) * (1f / (1 << 23));
+            }
+            position = p;
+            p += phase;
+            p -= (int) p;
+            switch (shape) {
+                case Sine -> value = FastMath.sin(FastMath.TWO_PI * p);
+                case Triangle -> value = p < 0.5f ? 4 * p - 1 : 3 - 4 * p;
+                case Saw -> value = 2 * p - 1;
+                case Square -> value = p < 0.5f ? 1 : -1;
+                case Random -> value = held;
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            position = 0;
+            held = 0;
+        }
+    }
+
+    /** Peak level of the bus input, attack and release per control block. */
+    public static final class Envelope extends Modulator {
+
+        public static final float MIN_TIME = 0.001f;
+        public static final float MAX_TIME = 5f;
+
+        /** seconds */
+        @Getter private float attack = 0.01f;
+        @Getter private float release = 0.2f;
+        /** input level (linear) that reads as 1 */
+        @Getter @Setter private float sensitivity = 1f;
+        private float attCoef, relCoef;
+
+        public Envelope() {
+            setAttack(attack);
+            setRelease(release);
+        }
+
+        public void setAttack(float seconds) {
+            attack = clamp(seconds);
+            attCoef = coef(attack);
+        }
+
+        public void setRelease(float seconds) {
+            release = clamp(seconds);
+            relCoef = coef(release);
+        }
+
+        private static float clamp(float seconds) {
+            return seconds < MIN_TIME ? MIN_TIME : seconds > MAX_TIME ? MAX_TIME : seconds;
+        }
+
+        private static float coef(float seconds) {
+            return 1f - (float) Math.exp(-Smoother.CONTROL / (seconds * SAMPLE_RATE));
+        }
+
+        @Override
+        void tick(float[] left, float[] right, int start, int end) {
+            float peak = 0;
+            for (int i = start; i < end; i++)
+                peak = Math.max(peak, Math.abs(left[i]));
+            if (right != null)
+                for (int i = start; i < end; i++)
+                    peak = Math.max(peak, Math.abs(right[i]));
+            float target = Math.min(1f, peak / sensitivity);
+            float v = value;
+            v += (target - v) * (target > v ? attCoef : relCoef);
+            value = v < Denormal.OFFSET ? 0 : v;
+        }
+    }
+
+    /** Sequence of levels, one per step, each step a synced note value or a fixed time. */
+    public static final class Step extends Modulator implements TimeFX {
+
+        public static final int MAX_STEPS = 32;
+
+        private final float[] levels = new float[MAX_STEPS];
+        @Getter private volatile int steps = 8;
+        /** seconds per step */
+        @Getter private volatile float length = 0.25f;
+        /** control blocks to ramp into each level, 0 = hard steps */
+        @Getter @Setter private int glide;
+        @Getter @Setter private boolean sync;
+        @Getter @Setter private String type = TYPE[0];
+
+        private float elapsed; // seconds into the current step
+        private int index;
+        private float step;
+        private int ramp;
+
+        /** @param level -1 to 1 */
+        public void setLevel(int step, float level) {
+            if (step < 0 || step >= MAX_STEPS || level < -1 || level > 1)
+                throw new InvalidParameterException(step + ": " + level);
+            levels[step] = level;
+        }
+
+        public float getLevel(int step) {
+            return levels[step];
+        }
+
+        public void setSteps(int count) {
+            if (count < 1 || count > MAX_STEPS)
+                throw new InvalidParameterException("" + count);
+            steps = count;
+        }
+
+        public void setLength(float seconds) {
+            if (seconds <= 0)
+                throw new InvalidParameterException("" + seconds);
+            length = seconds;
+        }
+
+        @Override
+        public void sync(float unit) {
+            if (sync)
+                length = seconds(unit, type);
+        }
+
+        @Override
+        void tick(float[] left, float[] right, int start, int end) {
+            elapsed += (float) (end - start) / SAMPLE_RATE;
+            if (elapsed >= length) {
+                elapsed -= length;
+                if (elapsed >= length)
+                    elapsed = 0;
+                index = (index + 1) % steps;
+                ramp = glide;
+                step = ramp > 0 ? (levels[index] - value) / ramp : 0;
+            }
+            if (ramp > 0) {
+                value += step;
+                ramp--;
+            } else
+                value = levels[index];
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            elapsed = 0;
+            index = 0;
+            ramp = 0;
+        }
+    }
+
+}
@@ -9,14 +9,23 @@ import lombok.Getter;
 /**
 
 	•  IIR Filter op ported from Gervill. MONO op (uses left channel only).
-	•  Converted from FloatBuffer to float[] and adapted to FX API. */
-public class MonoFilter implements FX {
+	•  Converted from FloatBuffer to float[] and adapted to FX API.
+	•  LowPass/HighPass/BandPass/Notch run on the TPT state-variable engine (SVF),
+	   which also takes a per-sample cutoff buffer, see modulate(). */
+public class MonoFilter implements FX, Discrete {
 
 public enum Settings { Type, Frequency, Resonance }
-public static enum Type { HiCut, LoCut }
+public static enum Type {
+    HiCut, LoCut, LowPass, HighPass, BandPass, Notch;
+    /** TPT state-variable engine (vs. biquad) */
+    public boolean isSvf() {
+        return ordinal() >= LowPass.ordinal();
+    }
+}
 
 private final int BUF_SIZE; // anti-alias upsample-able
 private final int SR; // anti-alias upsample-able
+private final int CONTROL; // control block, scaled with upsample
 
 /** y = 1/30 * x ^ 2.81 + bassFloor */
 public static float knobToFrequency(int val) {
@@ -24,6 +33,8 @@ public static float knobToFrequency(int val) {
 }
 
 static float[] reverse = new float[100];
+private static final Type[] TYPES = Type.values();
+private static final SVF.Output[] OUTPUTS = SVF.Output.values();
 static {
     for (int i = 0; i < reverse.length; i++)
         reverse[i] = knobToFrequency(i);
@@ -40,16 +51,26 @@ public static int frequencyToKnob(float freq) {
 @Getter private Type filterType;
 @Getter private float frequency = 666;
 private double resonancedB = 1;
+private final Smoother cutoff = new Smoother(frequency, Smoother.TICKS, true);
+private final Smoother resonance = new Smoother((float) resonancedB);
 private final IIRFilter filter = new IIRFilter();
+private final SVF svf;
+private volatile boolean svfDirty = true;
 
 public MonoFilter(Type type, float freq, int upsample) {
     BUF_SIZE = upsample * Constants.bufSize();
     SR = upsample * Constants.sampleRate();
+    CONTROL = upsample * Smoother.CONTROL;
+    svf = new SVF(SR);
     filterType = type;
     setFrequency(freq);
     filter.reset();
 }
 
+@Override public boolean isDiscrete(int idx) {
+    return idx == Settings.Type.ordinal();
+}
+
 @Override public int get(int idx) {
     if (idx == Settings.Type.ordinal())
         return getFilterType().ordinal();
@@ -62,7 +83,7 @@ public MonoFilter(Type type, float freq, int upsample) {
 
 @Override public void set(int idx, int value) {
     if (idx == Settings.Type.ordinal())
-        setFilterType(Type.values()[value]);
+        setFilterType(TYPES[value]);
     else if (idx == Settings.Frequency.ordinal())
         setFrequency(knobToFrequency(value));
     else if (idx == Settings.Resonance.ordinal())
@@ -75,7 +96,7 @@ public void setFrequency(float hz) {
     if (frequency == hz)
         return;
     frequency = hz;
-    filter.dirty = true;
+    cutoff.set(hz);
 }
 
 /**Set resonance of filter in dB. Recommended range (0 - 30)*/
@@ -83,7 +104,7 @@ public void setResonance(float db) {
     if (resonancedB == db)
         return;
     resonancedB = db;
-    filter.dirty = true;
+    resonance.set(db);
 }
 
 /** @return resonance of filter. */
@@ -96,21 +117,72 @@ public void setFilterType(Type filtertype) {
     if (this.filterType == filtertype) return;
     this.filterType = filtertype;
     filter.dirty = true;
+    svfDirty = true;
 }
 
 /** Process mono channel in-place */
 public void process(float[] mono) {
+    if (filterType.isSvf())
+        svfReplace(mono, null);
+    else
+        filter.filter2Replace(mono);
+}
+
+/**
+ * Process mono channel in-place with a cutoff per sample (Hz), e.g. an envelope or LFO
+ * rendered at audio rate.  The state-variable types follow it sample by sample; HiCut and
+ * LoCut take its first value as their (smoothed) frequency.
+ */
+public void modulate(float[] mono, float[] cutoffHz) {
+    if (filterType.isSvf()) {
+        svfReplace(mono, cutoffHz);
+        return;
+    }
+    setFrequency(cutoffHz[0]);
     filter.filter2Replace(mono);
 }
 
+// resonance (and the fixed cutoff) at control rate, the TPT structure needs no coefficient ramp
+private void svfReplace(float[] data, float[] hz) {
+    if (data == null) return;
+    final SVF.Output out = OUTPUTS[filterType.ordinal() - Type.LowPass.ordinal()];
+    final int len = Math.min(BUF_SIZE, data.length);
+    for (int start = 0; start < len; start += CONTROL) {
+        boolean moved = cutoff.tick() | resonance.tick();
+        if (moved || svfDirty) {
+            svfDirty = false;
+            svf.setResonance(resonance.value());
+            svf.setFrequency(cutoff.value());
+        }
+        svf.process(data, hz, start, Math.min(start + CONTROL, len), out);
+    }
+}
+
 /** FX API: left is processed, right ignored (can be null) */
 @Override public void process(float[] left, float[] right) {
     if (left != null) process(left);
 }
 
+/**
+ * Gervill HiCut/LoCut biquad for cutoff ratio r (frequency / sample rate, already clamped)
+ * and resonance rdB (0 to 30), into out = {a0, a1, a2, b1, b2}.  Shared with FilterBank.
+ */
+static void biquad(Type type, double r, double rdB, double[] out) {
+    double c = type == Type.HiCut ? 1.0 / FastMath.tan((float) (Math.PI * r)) : FastMath.tan((float) (Math.PI * r));
+    double csq = c * c;
+    double resonance = FastMath.dB2rap((float) -rdB);
+    double _q = FastMath.SQRT2 * resonance;
+    double _a0 = 1.0 / (1.0 + (_q * c) + (csq));
+    out[0] = _a0;
+    out[1] = type == Type.HiCut ? 2.0 * _a0 : -2.0 * _a0;
+    out[2] = _a0;
+    out[3] = type == Type.HiCut ? (2.0 * _a0) * (1.0 - csq) : (2.0 * _a0) * (csq - 1.0);
+    out[4] = _a0 * (1.0 - (_q * c) + csq);
+}
+
 class IIRFilter {
 
-    private boolean dirty = true;
+    private volatile boolean dirty = true;
     private double x1;
     private double x2;
     private double y1;
@@ -123,19 +195,19 @@ class IIRFilter {
     private double gain = 1;
     private double wet = 0;
     private double last_wet = 0;
-    private double last_a0;
-    private double last_a1;
-    private double last_a2;
-    private double last_b1;
-    private double last_b2;
-    private double last_gain;
     private boolean last_set = false;
+    // anti-denormal offset, sign flipped every block
+    private double dc = Denormal.OFFSET;
 
     void reset() {
         dirty = true;
         last_set = false;
         wet = 0.0f;
         gain = 1.0f;
+        cutoff.snap();
+        resonance.snap();
+        svf.reset();
+        svfDirty = true;
 
         x1 = 0; x2 = 0;
         y1 = 0; y2 = 0;
@@ -144,9 +216,18 @@ class IIRFilter {
         b1 = 0; b2 = 0;
     }
 
-    private void filter2calc() {
+    private final double[] coef = new double[5];
+
+    private void set(double[] c) {
+        a0 = c[0];
+        a1 = c[1];
+        a2 = c[2];
+        b1 = c[3];
+        b2 = c[4];
+    }
+
+    private void filter2calc(float frequency, double rdB) {
 
-        double rdB = resonancedB;
         if (rdB < 0) {
             rdB = 0;
         }
@@ -169,21 +250,8 @@ class IIRFilter {
                 wet = 1.0f;
             }
 
-            double c = 1.0 / (Math.tan(Math.PI * r));
-            double csq = c * c;
-            double resonance = Math.pow(10.0, -(rdB / 20));
-            double _q = Math.sqrt(2.0f) * resonance;
-            double _a0 = 1.0 / (1.0 + (_q * c) + (csq));
-            double _a1 = 2.0 * _a0;
-            double _a2 = _a0;
-            double _b1 = (2.0 * _a0) * (1.0 - csq);
-            double _b2 = _a0 * (1.0 - (_q * c) + csq);
-
-            this.a0 = _a0;
-            this.a1 = _a1;
-            this.a2 = _a2;
-            this.b1 = _b1;
-            this.b2 = _b2;
+            biquad(Type.HiCut, r, rdB, coef);
+            set(coef);
 
         }
 
@@ -196,139 +264,77 @@ class IIRFilter {
                 r = 0.0001;
             }
             wet = 1.0f;
-            double c = (Math.tan(Math.PI * (r)));
-            double csq = c * c;
-            double resonance = Math.pow(10.0, -(rdB / 20));
-            double _q = Math.sqrt(2.0f) * resonance;
-            double _a0 = 1.0 / (1.0 + (_q * c) + (csq));
-            double _a1 = -2.0 * _a0;
-            double _a2 = _a0;
-            double _b1 = (2.0 * _a0) * (csq - 1.0);
-            double _b2 = _a0 * (1.0 - (_q * c) + csq);
-
-            this.a0 = _a0;
-            this.a1 = _a1;
-            this.a2 = _a2;
-            this.b1 = _b1;
-            this.b2 = _b2;
+            biquad(Type.LoCut, r, rdB, coef);
+            set(coef);
 
         }
 
     }
 
+    /** coefficients recalculated only on control blocks where cutoff or resonance moved */
     private void filter2Replace(float[] data) {
         if (data == null) return;
 
-        if (dirty) {
-            filter2calc();
-            dirty = false;
-        }
-        if (!last_set) {
-            last_a0 = a0;
-            last_a1 = a1;
-            last_a2 = a2;
-            last_b1 = b1;
-            last_b2 = b2;
-            last_gain = gain;
+        final int len = Math.min(BUF_SIZE, data.length);
+        dc = -dc;
+        for (int start = 0; start < len; start += CONTROL) {
+            boolean moved = cutoff.tick() | resonance.tick();
+            if (moved || dirty) {
+                dirty = false;
+                filter2calc(cutoff.value(), resonance.value());
+            }
+            if (!last_set) {
+                last_wet = wet;
+                last_set = true;
+            }
+            if (wet > 0 || last_wet > 0)
+                filter2Replace(data, start, Math.min(start + CONTROL, len));
             last_wet = wet;
-            last_set = true;
         }
+    }
 
-        if (wet > 0 || last_wet > 0) {
-
-            double _a0 = this.last_a0;
-            double _a1 = this.last_a1;
-            double _a2 = this.last_a2;
-            double _b1 = this.last_b1;
-            double _b2 = this.last_b2;
-            double _gain = this.last_gain;
+    private void filter2Replace(float[] data, int start, int end) {
+        final double _a0 = this.a0;
+        final double _a1 = this.a1;
+        final double _a2 = this.a2;
+        final double _b1 = this.b1;
+        final double _b2 = this.b2;
+        final double _gain = this.gain;
+        final double offset = this.dc;
+        double _x1 = this.x1;
+        double _x2 = this.x2;
+        double _y1 = this.y1;
+        double _y2 = this.y2;
+
+        if (wet != last_wet) { // crossfade in/out of bypass
             double _wet = this.last_wet;
-            double a0_delta = (this.a0 - this.last_a0) / BUF_SIZE;
-            double a1_delta = (this.a1 - this.last_a1) / BUF_SIZE;
-            double a2_delta = (this.a2 - this.last_a2) / BUF_SIZE;
-            double b1_delta = (this.b1 - this.last_b1) / BUF_SIZE;
-            double b2_delta = (this.b2 - this.last_b2) / BUF_SIZE;
-            double gain_delta = (this.gain - this.last_gain) / BUF_SIZE;
-            double wet_delta = (this.wet - this.last_wet) / BUF_SIZE;
-            double _x1 = this.x1;
-            double _x2 = this.x2;
-            double _y1 = this.y1;
-            double _y2 = this.y2;
-
-            int len = Math.min(BUF_SIZE, data.length);
-
-            if (wet_delta != 0) {
-                for (int i = 0; i < len; i++) {
-                    _a0 += a0_delta;
-                    _a1 += a1_delta;
-                    _a2 += a2_delta;
-                    _b1 += b1_delta;
-                    _b2 += b2_delta;
-                    _gain += gain_delta;
-                    _wet += wet_delta;
-                    double x = data[i];
-                    double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
-                    data[i] = (float) ((y * _gain) * _wet + (x) * (1 - _wet));
-                    _x2 = _x1;
-                    _x1 = x;
-                    _y2 = _y1;
-                    _y1 = y;
-                }
-            } else if (a0_delta == 0 && a1_delta == 0 && a2_delta == 0
-                    && b1_delta == 0 && b2_delta == 0) {
-                for (int i = 0; i < len; i++) {
-                    double x = data[i];
-                    double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
-                    data[i] = (float) (y * _gain);
-                    _x2 = _x1;
-                    _x1 = x;
-                    _y2 = _y1;
-                    _y1 = y;
-                }
-            } else {
-                for (int i = 0; i < len; i++) {
-                    _a0 += a0_delta;
-                    _a1 += a1_delta;
-                    _a2 += a2_delta;
-                    _b1 += b1_delta;
-                    _b2 += b2_delta;
-                    _gain += gain_delta;
-                    double x = data[i];
-                    double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
-                    data[i] = (float) (y * _gain);
-                    _x2 = _x1;
-                    _x1 = x;
-                    _y2 = _y1;
-                    _y1 = y;
-                }
-            }
-
-            if (Math.abs(_x1) < 1.0E-8) {
-                _x1 = 0;
-            }
-            if (Math.abs(_x2) < 1.0E-8) {
-                _x2 = 0;
+            final double wet_delta = (this.wet - this.last_wet) / (end - start);
+            for (int i = start; i < end; i++) {
+                _wet += wet_delta;
+                double x = data[i] + offset;
+                double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
+                data[i] = (float) ((y * _gain) * _wet + (x) * (1 - _wet));
+                _x2 = _x1;
+                _x1 = x;
+                _y2 = _y1;
+                _y1 = y;
             }
-            if (Math.abs(_y1) < 1.0E-8) {
-                _y1 = 0;
+        } else {
+            for (int i = start; i < end; i++) {
+                double x = data[i] + offset;
+                double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
+                data[i] = (float) (y * _gain);
+                _x2 = _x1;
+                _x1 = x;
+                _y2 = _y1;
+                _y1 = y;
             }
-            if (Math.abs(_y2) < 1.0E-8) {
-                _y2 = 0;
-            }
-            this.x1 = _x1;
-            this.x2 = _x2;
-            this.y1 = _y1;
-            this.y2 = _y2;
         }
 
-        this.last_a0 = this.a0;
-        this.last_a1 = this.a1;
-        this.last_a2 = this.a2;
-        this.last_b1 = this.b1;
-        this.last_b2 = this.b2;
-        this.last_gain = this.gain;
-        this.last_wet = this.wet;
-
+        this.x1 = _x1;
+        this.x2 = _x2;
+        this.y1 = _y1;
+        this.y2 = _y2;
     }
 
 }
@@ -0,0 +1,23 @@
+package judahzone.fx;
+
+import judahzone.api.FX.RTFX;
+
+/**
+ * Optional out-of-place form of an effect that would otherwise copy its input aside.
+ * StereoBus and EffectGraph prefer it: the bus ping-pongs between its own buffers and a
+ * second bus-owned pair, a graph branch reads its input straight from the shared buffer.
+ */
+public interface OutOfPlace extends RTFX {
+
+    /**
+     * Read in, write every sample of out.  Out may be the same arrays as in (in place),
+     * otherwise in is left untouched.  Right channels are null in mono.
+     */
+    void process(float[] inL, float[] inR, float[] outL, float[] outR);
+
+    @Override
+    default void process(float[] left, float[] right) {
+        process(left, right, left, right);
+    }
+
+}
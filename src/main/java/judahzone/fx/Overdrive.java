@@ -2,13 +2,12 @@ package judahzone.fx;
 
 import java.security.InvalidParameterException;
 
-import judahzone.api.FX;
 import judahzone.util.Constants;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 /** See: references in original. Converted to FX.RTFX and float[] API. */
-public final class Overdrive implements FX.RTFX {
+public final class Overdrive implements Fusable, Tileable, Discrete {
     static final float MIN_DRIVE = 0.1f;
     static final float MAX_DRIVE = 0.9f;
 
@@ -30,9 +29,17 @@ public final class Overdrive implements FX.RTFX {
         private final float makeupGain;
     }
 
+    private static final Algo[] ALGOS = Algo.values();
+
     @FunctionalInterface
     private interface Waveshaper {
-        float apply(float x);
+        float apply(float x, float[] k);
+    }
+
+    // a shaper and its coefficients, see activate()
+    private static final class Curve {
+        Waveshaper shaper = (x, k) -> x;
+        final float[] k = new float[5];
     }
 
     @Getter private final String name = Overdrive.class.getSimpleName();
@@ -42,8 +49,18 @@ public final class Overdrive implements FX.RTFX {
     private int clipping = 0;
     private float diode = 2f;
     private Algo algo = Algo.SMITH;
-    private Waveshaper shaper = x -> x; // rebuild in activate()
+    private final Curve[] curves = {new Curve(), new Curve()};
+    private volatile Curve curve = curves[0]; // retuned in activate()
     private static final float SAFETY_OUTPUT_CLAMP = 0.999f;
+    // per block snapshot for frame()
+    private Waveshaper kShaper;
+    private float[] kCoef;
+    private float kGain;
+    private float kDiode;
+
+    @Override public boolean isDiscrete(int idx) {
+        return idx == Settings.Algo.ordinal();
+    }
 
     @Override public int get(int idx) {
         return switch (idx) {
@@ -76,134 +93,146 @@ public final class Overdrive implements FX.RTFX {
                 diode = 1f + (3f - 2.7f * (0.01f * clipping));
             }
             case 2 -> {
-                Algo[] algos = Algo.values();
-                int clamped = Math.max(0, Math.min(value, algos.length - 1));
-                algo = algos[clamped];
+                int clamped = Math.max(0, Math.min(value, ALGOS.length - 1));
+                algo = ALGOS[clamped];
                 activate();
             }
             default -> throw new InvalidParameterException("Setting " + idx + " (=" + value + ")");
         }
     }
 
+    /**
+     * Coefficients of the current algorithm and drive into the spare curve, then publish it.
+     * No allocation: the shapers are non-capturing, the two curves are reused (a second
+     * activate() within one block may retune the curve that block is using).
+     */
     @Override
     public void activate() {
+        final Curve c = curve == curves[0] ? curves[1] : curves[0];
+        final float[] k = c.k;
         final float driveGain = 1f + drive * 29f;
 
         switch (algo) {
             case SMITH -> {
                 double preMulD = drive * 99 + 1;
                 double postMulD = 1 / (Math.log(preMulD * 2) * 1.0 / Math.log(2));
-                final float preMul = (float) preMulD;
-                final float postMul = (float) postMulD;
-                shaper = x -> (float) (Math.atan(x * preMul) * postMul);
+                k[0] = (float) preMulD;
+                k[1] = (float) postMulD;
+                c.shaper = (x, p) -> (float) (Math.atan(x * p[0]) * p[1]);
             }
             case BLUE -> {
                 final float driveShaped = (float) Math.pow(drive, 1.2f);
                 final float posGain = 3f + 12f * driveShaped;
                 final float negGain = 1.5f + 6f * driveShaped;
-                final float posLevel = 0.9f + 0.45f * driveShaped;
-                final float negLevel = 0.7f + 0.35f * driveShaped;
+                k[0] = Math.min(posGain, 14f);
+                k[1] = Math.min(negGain, 8f);
+                k[2] = 0.9f + 0.45f * driveShaped; // levels
+                k[3] = 0.7f + 0.35f * driveShaped;
 
-                final float posGainCapped = Math.min(posGain, 14f);
-                final float negGainCapped = Math.min(negGain, 8f);
-
-                shaper = x -> {
+                c.shaper = (x, p) -> {
                     if (x >= 0f) {
-                        return (float) (Math.tanh(posGainCapped * x) * posLevel);
+                        return (float) (Math.tanh(p[0] * x) * p[2]);
                     } else {
-                        return (float) (Math.tanh(negGainCapped * x) * negLevel);
+                        return (float) (Math.tanh(p[1] * x) * p[3]);
                     }};
             }
             case TWIN -> {
-                final float kDrive = 0.9f + 0.3f * drive;
-                final float globalScale = 0.7f * (0.7f + 0.4f * drive);
-                shaper = x -> {
+                k[0] = 0.9f + 0.3f * drive;
+                k[1] = 0.7f * (0.7f + 0.4f * drive);
+                k[2] = driveGain;
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
-                    float denom1 = ax + kDrive;
+                    float denom1 = ax + p[0];
                     if (denom1 == 0f) return 0f;
-                    float num = (x / denom1) * 1.5f * driveGain;
+                    float num = (x / denom1) * 1.5f * p[2];
                     float denom2 = x * x + (-1.0f) * ax + 1.0f;
                     if (denom2 == 0f) return 0f;
-                    return (num / denom2) * globalScale;
+                    return (num / denom2) * p[1];
                 }; }
             case ZONE -> {
                 final float baseK = 2.0f;
-                final float k = baseK - 0.9f * drive;
-                shaper = x -> {
+                k[0] = baseK - 0.9f * drive;
+                k[1] = driveGain;
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
-                    float denom = ax + k;
+                    float denom = ax + p[0];
                     if (denom == 0f) return 0f;
-                    return (x / denom) * driveGain * 0.5f;
+                    return (x / denom) * p[1] * 0.5f;
                 }; }
             case FUZZ -> {
-                final float kDrive = 0.9f + 0.4f * drive;
-                final float globalScale = 0.6f * (0.8f + 0.35f * drive);
-                shaper = x -> {
+                k[0] = 0.9f + 0.4f * drive;
+                k[1] = 0.6f * (0.8f + 0.35f * drive);
+                k[2] = driveGain;
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
                     if (ax == 0f) return 0f;
-                    float num = x * (ax + kDrive) * 1.5f * driveGain;
+                    float num = x * (ax + p[0]) * 1.5f * p[2];
                     float denom = x * x + 0.3f * (0.1f / ax) + 1.0f;
                     if (denom == 0f) return 0f;
-                    return (num / denom) * globalScale;
+                    return (num / denom) * p[1];
                 }; }
             case SOFT -> {
-                final float hardness = 0.7f + 2.3f * drive;
-                shaper = x -> {
+                k[0] = 0.7f + 2.3f * drive; // hardness
+                k[1] = 0.8f + 0.6f * drive;
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
-                    float denom = 1.0f + ax * hardness;
+                    float denom = 1.0f + ax * p[0];
                     if (denom == 0f) return 0f;
-                    return (x / denom) * (0.8f + 0.6f * drive);
+                    return (x / denom) * p[1];
                 }; }
             case HARD -> {
                 final float driveShaped = (float) Math.pow(drive, 1.3);
-                final float hardness    = 1.0f + 9.0f * driveShaped;
-                final float outGain     = 0.7f + 1.0f * driveShaped;
-                shaper = x -> {
+                k[0] = 1.0f + 9.0f * driveShaped; // hardness
+                k[1] = 0.7f + 1.0f * driveShaped; // out gain
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
-                    float denom = 1.0f + ax * hardness;
+                    float denom = 1.0f + ax * p[0];
                     if (denom == 0f) return 0f;
-                    return (x / denom) * outGain;
+                    return (x / denom) * p[1];
                 }; }
             case MESA -> {
                 final float a = 1f + 9f * drive;
-                final float norm = (float) (1.0 - Math.exp(-a));
-                final float driveMix = 0.4f + 0.6f * drive;
-                shaper = x -> {
-                    float v = (float) ((1.0 - Math.exp(-a * x)) / norm);
-                    return (1f - driveMix) * x + driveMix * v;
+                k[0] = a;
+                k[1] = (float) (1.0 - Math.exp(-a)); // norm
+                k[2] = 0.4f + 0.6f * drive; // drive mix
+                c.shaper = (x, p) -> {
+                    float v = (float) ((1.0 - Math.exp(-p[0] * x)) / p[1]);
+                    return (1f - p[2]) * x + p[2] * v;
                 }; }
             case TUBE -> {
-                final float shapeGain = 0.7f + 0.9f * drive;
-                shaper = x -> {
+                k[0] = 0.7f + 0.9f * drive; // shape gain
+                k[1] = 0.5f + 0.4f * drive; // mix
+                c.shaper = (x, p) -> {
                     float ax = Math.abs(x);
                     float denom = 2f + ax;
                     if (denom == 0f) return 0f;
                     float s = 3f * x / denom;
-                    float mix = 0.5f + 0.4f * drive;
-                    float wet = s * shapeGain;
-                    return (1f - mix) * x + mix * wet;
+                    float wet = s * p[0];
+                    return (1f - p[1]) * x + p[1] * wet;
                 }; }
             case FOLD -> {
-                final float foldGain = 1f + 4f * drive;
-                final float k = 0.4f;
+                final float fold = 0.4f;
                 final float dryMix = 0.5f - 0.3f * drive;
-                final float wetMix = 1f - dryMix;
-                final float range = 2f * k;
-                final float limit = SAFETY_OUTPUT_CLAMP;
-
-                shaper = x -> {
-                    float v = x * foldGain;
-                    float t = (v + k) % range;
-                    if (t < 0f) t += range;
-                    float folded = t - k;
-                    float y = dryMix * x + wetMix * folded;
-                    y = Math.max(-limit, Math.min(limit, y));
+                k[0] = 1f + 4f * drive; // fold gain
+                k[1] = fold;
+                k[2] = dryMix;
+                k[3] = 1f - dryMix;
+                k[4] = 2f * fold; // range
+
+                c.shaper = (x, p) -> {
+                    float v = x * p[0];
+                    float t = (v + p[1]) % p[4];
+                    if (t < 0f) t += p[4];
+                    float folded = t - p[1];
+                    float y = p[2] * x + p[3] * folded;
+                    y = Math.max(-SAFETY_OUTPUT_CLAMP, Math.min(SAFETY_OUTPUT_CLAMP, y));
                     return y;
                 }; }
             default -> {
-                shaper = x -> x;
+                c.shaper = (x, p) -> x;
             }
         }
+        curve = c;
     }
 
     @Override public void process(float[] left, float[] right) {
@@ -211,24 +240,58 @@ public final class Overdrive implements FX.RTFX {
         if (right != null) process(right, false);
     }
 
+    @Override public void process(float[] left, float[] right, int start, int end) {
+        if (left != null) process(left, start, end);
+        if (right != null) process(right, start, end);
+    }
+
+    @Override
+    public void begin(int frames, boolean stereo) {
+        final Curve c = curve;
+        kShaper = c.shaper;
+        kCoef = c.k;
+        kGain = algo.makeupGain;
+        kDiode = clipping == 0 ? 0 : diode;
+    }
+
+    @Override
+    public void frame(float[] lr, int i) {
+        lr[0] = shape(lr[0]);
+        lr[1] = shape(lr[1]);
+    }
+
+    // one sample of process(buf, isLeft)
+    private float shape(float x) {
+        float y = kShaper.apply(x, kCoef) * kGain;
+        if (kDiode == 0)
+            return Math.max(-SAFETY_OUTPUT_CLAMP, Math.min(SAFETY_OUTPUT_CLAMP, y));
+        float max = kDiode * x;
+        return Math.abs(y) > Math.abs(max) ? max : y;
+    }
+
     /** Process 1 channel in-place using array indexing */
     public void process(float[] buf, boolean isLeft) {
         if (buf == null) return;
-        final Waveshaper waveShaper = shaper;
+        process(buf, 0, buf.length);
+    }
+
+    private void process(float[] buf, int start, int end) {
+        final Curve c = curve;
+        final Waveshaper waveShaper = c.shaper;
+        final float[] k = c.k;
         final float algoGain = algo.makeupGain;
-        final int len = buf.length;
 
         if (clipping == 0) {
-            for (int i = 0; i < len; i++) {
-                float y = waveShaper.apply(buf[i]) * algoGain;
+            for (int i = start; i < end; i++) {
+                float y = waveShaper.apply(buf[i], k) * algoGain;
                 y = Math.max(-SAFETY_OUTPUT_CLAMP, Math.min(SAFETY_OUTPUT_CLAMP, y));
                 buf[i] = y;
             }
         } else {
             final float localDiode = this.diode;
-            for (int i = 0; i < len; i++) {
+            for (int i = start; i < end; i++) {
                 float x = buf[i];
-                float y = waveShaper.apply(x) * algoGain;
+                float y = waveShaper.apply(x, k) * algoGain;
                 float max = localDiode * x;
                 if (Math.abs(y) > Math.abs(max))
                     y = max;
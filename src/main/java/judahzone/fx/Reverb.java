@@ -41,4 +41,22 @@ public abstract class Reverb implements RTFX {
     /** if true, process() must be implemented */
     public abstract boolean isInternal();
 
+    /** optional early reflections ahead of the late network, null = off */
+    protected volatile EarlyReflections early;
+
+    public void setEarly(EarlyReflections reflections) {
+        early = reflections;
+    }
+
+    public EarlyReflections getEarly() {
+        return early;
+    }
+
+    /** implementations call this first in process(): adds early reflections (scaled by wet) in place */
+    protected final void reflect(float[] left, float[] right) {
+        final EarlyReflections er = early;
+        if (er != null)
+            er.process(left, right, getWet());
+    }
+
 }
@@ -0,0 +1,129 @@
+package judahzone.fx;
+
+/**
+ * Topology-preserving (zero delay feedback) state-variable filter, trapezoidal integrators
+ * after Zavalishin / Simper.  Low, band, high and notch come out of the same two states,
+ * and the structure stays stable under arbitrarily fast cutoff changes, so the cutoff may
+ * be driven per sample (envelopes, audio-rate FM) with one FastMath.tan and one division
+ * per sample.  Resonance is in dB over a Butterworth Q (0 dB), as in MonoFilter.
+ */
+public final class SVF {
+
+    public enum Output { LowPass, HighPass, BandPass, Notch }
+
+    /** dB */
+    public static final float MAX_RESONANCE = 30f;
+    private static final float MIN_HZ = 10f;
+
+    private final float sampleRate;
+    private final float maxHz;
+    private final float piOverSr;
+
+    // integrator states
+    private float ic1, ic2;
+    // damping (1/Q) and the fixed-cutoff coefficients
+    private float k = FastMath.SQRT2;
+    private float a1, a2, a3;
+    private float hz;
+    // anti-denormal offset, sign flipped every block
+    private float dc = Denormal.OFFSET;
+
+    public SVF(float sampleRate) {
+        this.sampleRate = sampleRate;
+        maxHz = 0.46f * sampleRate; // FastMath.tan stays accurate up to here
+        piOverSr = FastMath.PI / sampleRate;
+        setFrequency(1000);
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /** @param dB 0 (Butterworth) to {@link #MAX_RESONANCE} */
+    public void setResonance(float dB) {
+        dB = dB < 0 ? 0 : dB > MAX_RESONANCE ? MAX_RESONANCE : dB;
+        k = FastMath.SQRT2 * FastMath.dB2rap(-dB);
+        setFrequency(hz);
+    }
+
+    /** fixed cutoff for process() without a cutoff buffer */
+    public void setFrequency(float hz) {
+        this.hz = hz;
+        float g = FastMath.tan(clamp(hz) * piOverSr);
+        a1 = 1f / (1f + g * (g + k));
+        a2 = g * a1;
+        a3 = g * a2;
+    }
+
+    public float getFrequency() {
+        return hz;
+    }
+
+    private float clamp(float f) {
+        return f < MIN_HZ ? MIN_HZ : f > maxHz ? maxHz : f;
+    }
+
+    /**
+     * One output, in place.
+     * @param cutoff per-sample cutoff in Hz, or null for the fixed {@link #setFrequency(float)} */
+    public void process(float[] buf, float[] cutoff, int start, int end, Output out) {
+        final float offset = dc = -dc;
+        final float kk = k;
+        float s1 = ic1, s2 = ic2;
+        float c1 = a1, c2 = a2, c3 = a3;
+        final int mode = out.ordinal();
+        for (int i = start; i < end; i++) {
+            if (cutoff != null) {
+                float g = FastMath.tan(clamp(cutoff[i]) * piOverSr);
+                c1 = 1f / (1f + g * (g + kk));
+                c2 = g * c1;
+                c3 = g * c2;
+            }
+            final float x = buf[i] + offset;
+            final float v3 = x - s2;
+            final float v1 = c1 * s1 + c2 * v3;
+            final float v2 = s2 + c2 * s1 + c3 * v3;
+            s1 = 2f * v1 - s1;
+            s2 = 2f * v2 - s2;
+            buf[i] = mode == 0 ? v2 : mode == 1 ? x - kk * v1 - v2 : mode == 2 ? v1 : x - kk * v1;
+        }
+        ic1 = s1;
+        ic2 = s2;
+    }
+
+    /**
+     * All outputs at once; any output may be null and any may be the input array.
+     * @param cutoff per-sample cutoff in Hz, or null for the fixed {@link #setFrequency(float)} */
+    public void process(float[] in, float[] cutoff, float[] low, float[] band, float[] high, float[] notch,
+            int start, int end) {
+        final float offset = dc = -dc;
+        final float kk = k;
+        float s1 = ic1, s2 = ic2;
+        float c1 = a1, c2 = a2, c3 = a3;
+        for (int i = start; i < end; i++) {
+            if (cutoff != null) {
+                float g = FastMath.tan(clamp(cutoff[i]) * piOverSr);
+                c1 = 1f / (1f + g * (g + kk));
+                c2 = g * c1;
+                c3 = g * c2;
+            }
+            final float x = in[i] + offset;
+            final float v3 = x - s2;
+            final float v1 = c1 * s1 + c2 * v3;
+            final float v2 = s2 + c2 * s1 + c3 * v3;
+            s1 = 2f * v1 - s1;
+            s2 = 2f * v2 - s2;
+            if (low != null) low[i] = v2;
+            if (band != null) band[i] = v1;
+            if (high != null) high[i] = x - kk * v1 - v2;
+            if (notch != null) notch[i] = x - kk * v1;
+        }
+        ic1 = s1;
+        ic2 = s2;
+    }
+
+    public void reset() {
+        ic1 = ic2 = 0;
+    }
+
+}
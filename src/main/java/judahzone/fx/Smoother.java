@@ -0,0 +1,100 @@
+package judahzone.fx;
+
+/**
+ * Control-rate ramp for a user-facing parameter (Hz, dB, Q, drive, delay time, gain).
+ *
+ * Any thread may {@link #set(float)} a new target.  The RT thread calls {@link #tick()} once
+ * every {@link #CONTROL} samples and recomputes its coefficients only when the value moved,
+ * so a sweep costs one coefficient calculation per control block instead of per-sample
+ * coefficient interpolation.  Ramps are linear, or geometric (constant ratio per tick) for
+ * strictly positive values such as frequency.
+ */
+public final class Smoother {
+
+    /** samples per control block */
+    public static final int CONTROL = 32;
+    /** default ramp length in control blocks (512 samples, ~11ms at 48k) */
+    public static final int TICKS = 16;
+
+    private final int ticks;
+    private final boolean geometric;
+
+    private volatile float target;
+    private float goal;
+    private float value;
+    private float last;
+    private float step;
+    private boolean ratio;
+    private int remaining;
+
+    /** linear ramp over the default length */
+    public Smoother(float initial) {
+        this(initial, TICKS, false);
+    }
+
+    /**
+     * @param ticks ramp length in control blocks
+     * @param geometric ramp by constant ratio (positive values only, falls back to linear) */
+    public Smoother(float initial, int ticks, boolean geometric) {
+        this.ticks = Math.max(1, ticks);
+        this.geometric = geometric;
+        snap(initial);
+    }
+
+    /** new destination, any thread */
+    public void set(float t) {
+        target = t;
+    }
+
+    public float getTarget() {
+        return target;
+    }
+
+    /** jump to the current target, no ramp */
+    public void snap() {
+        goal = value = last = target;
+        remaining = 0;
+    }
+
+    /** jump to a new target, no ramp */
+    public void snap(float t) {
+        target = t;
+        snap();
+    }
+
+    /**
+     * Advance one control block (RT thread).
+     * @return true if the value changed and dependent coefficients need recalculating */
+    public boolean tick() {
+        last = value;
+        final float t = target;
+        if (t != goal) {
+            goal = t;
+            remaining = ticks;
+            ratio = geometric && t > 0 && value > 0;
+            step = ratio ? FastMath.exp2(FastMath.log2(t / value) / ticks) : (t - value) / ticks;
+        }
+        if (remaining == 0)
+            return false;
+        if (--remaining == 0)
+            value = goal;
+        else
+            value = ratio ? value * step : value + step;
+        return true;
+    }
+
+    /** value for the current control block */
+    public float value() {
+        return value;
+    }
+
+    /** value of the previous control block, for per-sample interpolation of cheap parameters */
+    public float last() {
+        return last;
+    }
+
+    public boolean isRamping() {
+        return remaining > 0;
+    }
+
+}
@@ -27,12 +27,14 @@ public class StereoBiquad {
 	protected BWQType bwq_type = BWQType.BW;
 	private final Biquad left, right;
 
-	// current coefficients
-	private float a0, a1, a2, b0, b1, b2;
-	// previous coefficients for smoothing
-	private float lastA0, lastA1, lastA2, lastB0, lastB1, lastB2;
-	private boolean coeffDirty = true;
-	private boolean haveLastCoeffs = false;
+	// user-facing parameters, moved at control rate
+	private final Smoother hz, width, db;
+	// type or mode changed, recompute at the next control block
+	private volatile boolean dirty = true;
+	// current coefficients, normalized by a0
+	private float b0, b1, b2, a1, a2;
+	// anti-denormal offset, sign flipped every block
+	private float dc = Denormal.OFFSET;
 
 	public StereoBiquad(FilterType type, float frequency) { // Hi/Lo pass
 		this(type, frequency, 2, 16f);
@@ -53,43 +55,60 @@ public class StereoBiquad {
 		this.gain_db = gain;
 		left = new Biquad();
 		right = new Biquad();
-		coefficients();
+		hz = new Smoother(frequency, Smoother.TICKS, true);
+		width = new Smoother(bandwidth);
+		db = new Smoother(gain);
+		calculate(frequency, bandwidth, gain);
 	}
 
+	/** publish frequency, bandwidth, gain_db and type; the RT thread ramps towards them */
 	public void coefficients() {
-		float a = (float)(Math.pow(10.0, gain_db/40.0));
-		float w0 = (float)(2.0*Math.PI*frequency/SAMPLE_RATE);
-		float sinw0 = (float)Math.sin(w0);
-		float cosw0 = (float)Math.cos(w0);
+		hz.set(frequency);
+		width.set(bandwidth);
+		db.set(gain_db);
+		dirty = true;
+	}
+
+	private void calculate(float frequency, float bandwidth, float gain_db) {
+		float a = FastMath.dB2rap(gain_db * 0.5f); // 10^(dB/40)
+		float w0 = FastMath.TWO_PI * frequency / SAMPLE_RATE;
+		float sinw0 = FastMath.sin(w0);
+		float cosw0 = FastMath.cos(w0);
 		float alpha = 0f;
 		if (bwq_type==BWQType.Q) {
 			alpha = (float)(sinw0/(2.0*bandwidth));
 		} else if (bwq_type==BWQType.BW) {
-			alpha = (float)(sinw0*Math.sinh(LOG_2/2.0*bandwidth*w0/Math.sin(w0)));
+			alpha = sinw0 * FastMath.sinh(LOG_2 / 2f * bandwidth * w0 / sinw0);
 		} else if (bwq_type==BWQType.S) {
 			alpha = (float)(sinw0 * Math.sqrt((a+1.0/a)*(1/bandwidth-1)+2) / 2.0);
 		}
+		float a0, _a1, _a2, _b0, _b1, _b2;
 		if (filter_type==FilterType.LowPass) {
-			b1 = 1.0f - cosw0;
-			b0 = b2 = b1/2.0f;
+			_b1 = 1.0f - cosw0;
+			_b0 = _b2 = _b1/2.0f;
 			a0 = 1.0f + alpha;
-			a1 = -2.0f*cosw0;
-			a2 = 1.0f - alpha;
+			_a1 = -2.0f*cosw0;
+			_a2 = 1.0f - alpha;
 		} else if (filter_type==FilterType.HighPass) {
-			b0 = b2 = (1.0f + cosw0)/2;
-			b1 = -(1.0f + cosw0);
+			_b0 = _b2 = (1.0f + cosw0)/2;
+			_b1 = -(1.0f + cosw0);
 			a0 = 1.0f + alpha;
-			a1 = -2.0f * (float)Math.cos(w0);
-			a2 = 1.0f - alpha;
-		} else if (filter_type==FilterType.Peaking) {
-			b0 = 1.0f + alpha * a;
-			b1 = -2.0f*cosw0;
-			b2 = 1.0f - alpha*a;
+			_a1 = -2.0f * cosw0;
+			_a2 = 1.0f - alpha;
+		} else { // Peaking
+			_b0 = 1.0f + alpha * a;
+			_b1 = -2.0f*cosw0;
+			_b2 = 1.0f - alpha*a;
 			a0 = 1.0f + alpha/a;
-			a1 = -2.0f * cosw0;
-			a2 = 1.0f - alpha/a;
+			_a1 = -2.0f * cosw0;
+			_a2 = 1.0f - alpha/a;
 		}
-		coeffDirty = true;
+		float norm = 1f / a0;
+		b0 = _b0 * norm;
+		b1 = _b1 * norm;
+		b2 = _b2 * norm;
+		a1 = _a1 * norm;
+		a2 = _a2 * norm;
 	}
 
 	public static float gainDb(int val) {
@@ -98,105 +117,51 @@ public class StereoBiquad {
 	    return result;
 	}
 
+	/** coefficients are recalculated (shared by both channels) only on control blocks where a parameter moved */
 	public void process(float[] l, float[] r) {
-		// snapshot current coeffs into Biquads with smoothing across this block
-		left.updateCoefficients();
-		right.updateCoefficients();
-		left.processBuffer(l);
-		right.processBuffer(r);
+		process(l, r, 0, N_FRAMES);
+	}
+
+	/** frames [from, to), from on a control block edge */
+	public void process(float[] l, float[] r, int from, int to) {
+		if (from == 0) // once per block, tiles see the same offset as a whole-block call
+			dc = -dc;
+		for (int start = from; start < to; start += Smoother.CONTROL) {
+			boolean moved = hz.tick() | width.tick() | db.tick();
+			if (moved || dirty) {
+				dirty = false;
+				calculate(hz.value(), width.value(), db.value());
+			}
+			int end = Math.min(start + Smoother.CONTROL, to);
+			left.process(l, start, end);
+			right.process(r, start, end);
+		}
 	}
 
 	private class Biquad {
 
 		private float xn1, xn2, yn1, yn2 = 0;
 
-		void updateCoefficients() {
-			// If coefficients changed since last time, set up interpolation
-			if (coeffDirty || !haveLastCoeffs) {
-				// if we have previous coefficients, keep them for smoothing
-				if (!haveLastCoeffs) {
-					lastA0 = a0;
-					lastA1 = a1;
-					lastA2 = a2;
-					lastB0 = b0;
-					lastB1 = b1;
-					lastB2 = b2;
-					haveLastCoeffs = true;
-				}
-				coeffDirty = false;
+		void process(float[] buff, int start, int end) {
+			if (buff == null)
+				return;
+			final float lb0 = b0;
+			final float lb1 = b1;
+			final float lb2 = b2;
+			final float la1 = a1;
+			final float la2 = a2;
+			final float offset = dc;
+
+			for (int i = start; i < end; i++) {
+				float xn = buff[i] + offset;
+				float yn = lb0 * xn + lb1 * xn1 + lb2 * xn2
+				            - la1 * yn1 - la2 * yn2;
+				buff[i] = yn;
+				xn2 = xn1;
+				xn1 = xn;
+				yn2 = yn1;
+				yn1 = yn;
 			}
 		}
-
-		void processBuffer(float[] buff) {
-			// If we don't have previous coefficients yet, just use current ones, no smoothing
-			if (!haveLastCoeffs ||
-			    (lastA0 == a0 && lastA1 == a1 && lastA2 == a2 &&
-			     lastB0 == b0 && lastB1 == b1 && lastB2 == b2)) {
-
-				final float lb0 = b0;
-				final float lb1 = b1;
-				final float lb2 = b2;
-				final float la0 = a0;
-				final float la1 = a1;
-				final float la2 = a2;
-
-				for (int i = 0; i < N_FRAMES; i++) {
-					float xn = buff[i];
-					float yn = (lb0 * xn + lb1 * xn1 + lb2 * xn2
-					            - la1 * yn1 - la2 * yn2) / la0;
-					if (Math.abs(yn) < 1.0E-8f)
-						yn = 0f; // de-normalize
-					buff[i] = yn;
-					xn2 = xn1;
-					xn1 = xn;
-					yn2 = yn1;
-					yn1 = yn;
-				}
-
-			} else {
-				// Smoothly interpolate coefficients from lastA* / lastB* to a* / b* over this buffer
-				float curA0 = lastA0;
-				float curA1 = lastA1;
-				float curA2 = lastA2;
-				float curB0 = lastB0;
-				float curB1 = lastB1;
-				float curB2 = lastB2;
-
-				final float dA0 = (a0 - lastA0) / N_FRAMES;
-				final float dA1 = (a1 - lastA1) / N_FRAMES;
-				final float dA2 = (a2 - lastA2) / N_FRAMES;
-				final float dB0 = (b0 - lastB0) / N_FRAMES;
-				final float dB1 = (b1 - lastB1) / N_FRAMES;
-				final float dB2 = (b2 - lastB2) / N_FRAMES;
-
-				for (int i = 0; i < N_FRAMES; i++) {
-					curA0 += dA0;
-					curA1 += dA1;
-					curA2 += dA2;
-					curB0 += dB0;
-					curB1 += dB1;
-					curB2 += dB2;
-
-					float xn = buff[i];
-					float yn = (curB0 * xn + curB1 * xn1 + curB2 * xn2
-					            - curA1 * yn1 - curA2 * yn2) / curA0;
-					if (Math.abs(yn) < 1.0E-8f)
-						yn = 0f;
-					buff[i] = yn;
-					xn2 = xn1;
-					xn1 = xn;
-					yn2 = yn1;
-					yn1 = yn;
-				}
-			}
-
-			// At the end of this block, current coeffs become "last" for the next one
-			lastA0 = a0;
-			lastA1 = a1;
-			lastA2 = a2;
-			lastB0 = b0;
-			lastB1 = b1;
-			lastB2 = b2;
-		}
 	}
 }
@@ -2,6 +2,8 @@ package judahzone.fx;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import judahzone.api.FX;
@@ -18,6 +20,20 @@ import judahzone.util.Constants;
  *     * separate lists for known FX, active RTFX, pendingActive (hotswap),
  *       and offline FX
  *     * hot-swap behavior guarded by activeDirty
+ *     * a ModMatrix of LFO/envelope/step sources, applied to effect parameters
+ *       on the RT thread before the chain runs
+ *     * DAG mode: an EffectGraph (splits, mixes, parallel chains) replaces the
+ *       linear chain while set, swapped in like the active list
+ *     * OutOfPlace effects ping-pong between the caller's buffers and a second
+ *       bus-owned pair instead of copying their input aside
+ *     * host memory (e.g. JACK port buffers) is bulk-transferred straight into the
+ *       working buffers and back, see HostBuffer
+ *     * optionally, consecutive Fusable effects run as one loop over the buffers
+ *       (FusedChain), planned off the RT thread and swapped in with the active list
+ *     * effects switched on are JIT-warmed on a background thread before they
+ *       join the active list, see Warmup
+ *     * effects switched off are reset by the RT thread after their last cycle;
+ *       LazyReset state (long delay lines) is zeroed a slice per cycle after that
  *
  * Notes:
  * - This class intentionally contains no references to java.nio.FloatBuffer.
@@ -48,6 +64,36 @@ public class StereoBus {
     // All effects known to this channel (RT + offline + LFOs etc.)
     protected final List<FX> effects = new ArrayList<>();
 
+    // active, with runs of Fusable effects merged; built with pendingActive, swapped by hotSwap()
+    private ArrayList<RTFX> chain = new ArrayList<>();
+    private ArrayList<RTFX> pendingChain = new ArrayList<>();
+    private boolean fusion = false;
+    // frames per tile for runs of Tileable effects, 0 = whole blocks
+    private int tile = 0;
+    // OutOfPlace effects in chain
+    private int flips;
+    private int pendingFlips;
+    // the other side of the ping-pong
+    private final float[] pingL = new float[N_FRAMES];
+    private final float[] pingR = new float[N_FRAMES];
+
+    // DAG mode, replaces chain when not null
+    private EffectGraph graph;
+    private EffectGraph pendingGraph;
+
+    // LFOs, envelopes and step sources on effect parameters
+    protected final ModMatrix matrix = new ModMatrix();
+
+    // RT effects switched on, still warming up off the RT thread
+    private final HashMap<RTFX, Warmup.Job> warming = new HashMap<>();
+    private boolean warmup = true;
+
+    // RT thread: effects switched off whose state is still being zeroed
+    private LazyReset[] wiping = new LazyReset[0];
+    private int wipes;
+    // a slot per RT effect, sized by plan() (subclasses fill rt directly), taken over by hotSwap()
+    private LazyReset[] pendingWiping = wiping;
+
     // fx activate/deactivate flag
     private volatile boolean activeDirty = false;
 
@@ -69,24 +115,257 @@ public class StereoBus {
     public float[] getLeft() { return left; }
     public float[] getRight() { return right; }
 
-    /** process active real-time effects on the supplied buffers */
+    /** Modulation routes of this channel's effects */
+    public ModMatrix getMatrix() { return matrix; }
+
+    /**
+     * process active real-time effects on the supplied buffers.  Behind a closed Gate the
+     * buffers hold zeros: Tailless effects are skipped up to the next effect that may carry
+     * a tail, which is fed the zeros.
+     * OutOfPlace effects write into the other pair of buffers; with an odd count the first
+     * one runs in place, so the chain normally ends in l, r without a copy back.
+     */
     public void process(float[] l, float[] r) {
         hotSwap();
-        for (RTFX fx : active)
-            fx.process(l, r);
+        matrix.process(l, r);
+        if (graph != null) {
+            graph.process(l, r);
+            return;
+        }
+        float[] curL = l, curR = r;
+        boolean odd = (flips & 1) == 1;
+        boolean silent = false;
+        final ArrayList<RTFX> run = chain;
+        for (int i = 0; i < run.size(); i++) { // indexed, no Iterator before C2 scalar-replaces it
+            final RTFX fx = run.get(i);
+            if (silent && fx instanceof Tailless)
+                continue;
+            if (fx instanceof OutOfPlace oop && !odd) {
+                final float[] outL = curL == l ? pingL : l;
+                final float[] outR = r == null ? null : curL == l ? pingR : r;
+                oop.process(curL, curR, outL, outR);
+                curL = outL;
+                curR = outR;
+            } else {
+                if (fx instanceof OutOfPlace)
+                    odd = false;
+                fx.process(curL, curR);
+            }
+            silent = fx instanceof Gate gate && gate.isClosed();
+        }
+        if (curL != l) { // a gate skipped an OutOfPlace effect
+            System.arraycopy(curL, 0, l, 0, N_FRAMES);
+            if (r != null)
+                System.arraycopy(curR, 0, r, 0, N_FRAMES);
+        }
     }
 
-    // pass gui changes to the rt thread
+    /**
+     * One cycle straight from and to host memory: the inputs are pulled into this bus's
+     * buffers, processed, and pushed to the outputs, one bulk transfer per channel each way.
+     * @param inR null for a mono channel, outR then gets the mono result (may be null) */
+    public void process(HostBuffer inL, HostBuffer inR, HostBuffer outL, HostBuffer outR) {
+        process(N_FRAMES, inL, inR, outL, outR);
+    }
+
+    /**
+     * A host period of any multiple of N_FRAMES, run as consecutive N_FRAMES slices.
+     * N_FRAMES and the sample rate are fixed at startup (every effect sizes its buffers and
+     * coefficients from them), the period is not: start with the smallest block the machine
+     * can run and the host may move its period between multiples of it without a restart.
+     * @param frames this cycle's host period */
+    public void process(int frames, HostBuffer inL, HostBuffer inR, HostBuffer outL, HostBuffer outR) {
+        if (frames < N_FRAMES || frames % N_FRAMES != 0)
+            throw new InvalidParameterException("period " + frames + " / " + N_FRAMES);
+        for (int offset = 0; offset < frames; offset += N_FRAMES) {
+            inL.get(offset, left);
+            if (inR != null)
+                inR.get(offset, right);
+            process(left, inR == null ? null : right);
+            outL.put(offset, left);
+            if (outR != null)
+                outR.put(offset, inR == null ? left : right);
+        }
+    }
+
+    // pass gui changes to the rt thread, reset what left the chain
     protected void hotSwap() {
+        for (int i = wipes - 1; i >= 0; i--)
+            if (wiping[i].clear(LazyReset.WIPE)) {
+                wiping[i] = wiping[--wipes];
+                wiping[wipes] = null;
+            }
         if (activeDirty) {
+            final LazyReset[] slots = pendingWiping;
+            if (slots.length > wiping.length) { // more effects since the last swap
+                System.arraycopy(wiping, 0, slots, 0, wipes);
+                wiping = slots;
+            }
+            // indexed, addAll() would copy through toArray()
+            for (int i = 0; i < active.size(); i++)
+                if (!pendingActive.contains(active.get(i)))
+                    retire(active.get(i));
             active.clear();
-            active.addAll(pendingActive);
+            for (int i = 0; i < pendingActive.size(); i++)
+                active.add(pendingActive.get(i));
+            chain = pendingChain;
+            flips = pendingFlips;
+            graph = pendingGraph;
             activeDirty = false;
         }
     }
 
-    /** activate/deactive effect (hotswap gatekeeper) */
-    public void toggle(FX effect) {
+    // RT thread, after the effect's last process(): O(state) reset, large state zeroed over the next cycles
+    private void retire(RTFX fx) {
+        fx.reset();
+        if (!(fx instanceof LazyReset lazy) || lazy.clear(LazyReset.WIPE))
+            return;
+        for (int i = 0; i < wipes; i++)
+            if (wiping[i] == lazy)
+                return;
+        if (wipes < wiping.length) // always, plan() sized it; else stale, process() wipes it if switched on again
+            wiping[wipes++] = lazy;
+    }
+
+    public EffectGraph getGraph() {
+        return pendingGraph;
+    }
+
+    /**
+     * DAG mode: run a graph of effects instead of the active list, null to go back.
+     * The graph is compiled (buffers assigned) here, off the RT thread.
+     */
+    public void setGraph(EffectGraph g) {
+        if (g != null) {
+            g.compile();
+            g.activate();
+        }
+        pendingGraph = g;
+        activeDirty = true;
+    }
+
+    public boolean isFusion() {
+        return fusion;
+    }
+
+    /**
+     * Run consecutive Fusable effects in one loop, or each in its own pass (default).
+     * One pass reads and writes the buffers once instead of once per effect, but each
+     * sample then goes through an interface call per effect and nothing vectorizes, which
+     * costs more than it saves while the buffers fit in cache (up to several thousand frames).
+     */
+    public synchronized void setFusion(boolean fusion) {
+        this.fusion = fusion;
+        plan();
+    }
+
+    public int getTile() {
+        return tile;
+    }
+
+    /**
+     * Run consecutive Tileable effects tile by tile, or each over the whole block (0, default).
+     * Meant for blocks whose working set no longer fits in L1; ns per stereo frame from
+     * TileBench (test sources), best of two runs, single core:
+     * <pre>
+     *          EQ, HiCut, Gain, Overdrive, LoCut, EQ    six Gains
+     *  frames  whole  tile 32  tile 64            whole  tile 32  tile 64
+     *     128  169.8    163.6    164.4             12.2     12.5      8.1
+     *     512  152.3    152.2    164.9              7.1     11.8      8.5
+     *    2048  168.3    159.4    153.4              6.6     11.3      8.5
+     *    8192  171.5    177.6    153.6              6.3     11.5     10.2
+     * </pre>
+     * No crossover within noise (~10% here: the chain is compute bound, the prefetcher streams
+     * 64 KB blocks from L2), and cheap effects pay for the calls per tile, hence off.
+     * Fusion, when on, takes the Fusable effects first.
+     * @param frames 0, or a multiple of Smoother.CONTROL below N_FRAMES */
+    public synchronized void setTile(int frames) {
+        if (frames < 0 || frames % Smoother.CONTROL != 0)
+            throw new InvalidParameterException("tile " + frames);
+        tile = frames >= N_FRAMES ? 0 : frames;
+        plan();
+    }
+
+    // GUI thread: merge runs of 2 or more Fusable (or Tileable) effects of pendingActive, publish via activeDirty
+    private void plan() {
+        if (pendingWiping.length < rt.size())
+            pendingWiping = new LazyReset[rt.size()];
+        ArrayList<RTFX> result = new ArrayList<>(pendingActive.size());
+        ArrayList<Fusable> run = new ArrayList<>();
+        ArrayList<Tileable> tiles = new ArrayList<>();
+        for (RTFX fx : pendingActive) {
+            if (fusion && fx instanceof Fusable f) {
+                tile(tiles, result);
+                run.add(f);
+                continue;
+            }
+            flush(run, result);
+            if (tile > 0 && fx instanceof Tileable t) {
+                tiles.add(t);
+                continue;
+            }
+            tile(tiles, result);
+            result.add(fx);
+        }
+        flush(run, result);
+        tile(tiles, result);
+        int oop = 0;
+        for (RTFX fx : result)
+            if (fx instanceof OutOfPlace)
+                oop++;
+        pendingFlips = oop;
+        pendingChain = result;
+        activeDirty = true;
+    }
+
+    private static void flush(ArrayList<Fusable> run, ArrayList<RTFX> result) {
+        if (run.size() == 1)
+            result.add(run.get(0));
+        else if (run.size() > 1)
+            result.add(new FusedChain(run));
+        run.clear();
+    }
+
+    private void tile(ArrayList<Tileable> run, ArrayList<RTFX> result) {
+        if (run.size() == 1)
+            result.add(run.get(0));
+        else if (run.size() > 1)
+            result.add(TiledChain.of(run, tile));
+        run.clear();
+    }
+
+    public boolean isWarmup() {
+        return warmup;
+    }
+
+    /**
+     * JIT-warm RT effects before they go live (default), or switch them on at once
+     * (offline rendering, where the first cycles may be slow).
+     */
+    public void setWarmup(boolean warmup) {
+        this.warmup = warmup;
+    }
+
+    /** switched on, running on noise off the RT thread until compiled, see {@link Warmup} */
+    public synchronized boolean isWarming(FX effect) {
+        return warming.containsKey(effect);
+    }
+
+    // warm-up thread: the effect's class is compiled (on a shadow, the effect itself was not touched)
+    private synchronized void warmed(Warmup.Job job) {
+        if (!warming.remove(job.fx, job))
+            return; // switched off meanwhile
+        if (!pendingActive.contains(job.fx))
+            pendingActive.add(job.fx);
+        plan();
+    }
+
+    /**
+     * activate/deactive effect (hotswap gatekeeper).  An RT effect whose class has not run
+     * yet is warmed up first (on a shadow instance) and joins the active list about 0.5 s
+     * later, it counts as active meanwhile.
+     */
+    public synchronized void toggle(FX effect) {
         boolean wasOn = isActive(effect);
 
         // Determine new "on" state
@@ -96,20 +375,29 @@ public class StereoBus {
             nowOn = true;
             effect.activate();
         } else {
-            // turning off
+            // turning off, an RT effect is reset by the RT thread when it leaves the chain (a warming one never ran)
             nowOn = false;
-            effect.reset();
+            Warmup.Job job = warming.remove(effect);
+            if (job != null)
+                job.cancelled = true;
+            else if (!rt.contains(effect))
+                effect.reset();
         }
 
         if (rt.contains(effect)) {
             // RT effect: operate on pendingActive; swap will occur on RT thread
             if (nowOn) {
-                if (!pendingActive.contains(effect))
-                    pendingActive.add((RTFX) effect);
+                RTFX hot = (RTFX) effect;
+                if (warmup && !Warmup.isWarm(hot)) {
+                    warming.put(hot, Warmup.submit(hot, this::warmed));
+                    return;
+                }
+                if (!pendingActive.contains(hot))
+                    pendingActive.add(hot);
             } else {
                 pendingActive.remove(effect);
             }
-            activeDirty = true;
+            plan();
         } else if (effects.contains(effect)) {
             // offline effect: just track in offline list
             if (nowOn) {
@@ -125,18 +413,16 @@ public class StereoBus {
         // gui updates left to callers
     }
 
-    public void reset() {
+    public synchronized void reset() {
         // deactivate everything through the same path as toggle()
         // but we can do it directly to avoid spamming UI updates for each effect
 
-        for (RTFX rte : rt) {
-            if (pendingActive.contains(rte)) {
-                rte.reset();
-            }
-        }
-        // turn off RT effects
+        for (Warmup.Job job : warming.values())
+            job.cancelled = true;
+        warming.clear();
+        // turn off RT effects, the RT thread resets them as they leave the chain
         pendingActive.clear();
-        activeDirty = true;  // RT thread will pick up empty active list
+        plan();  // RT thread will pick up empty active list
 
         // turn off offline effects
         for (FX fx : offline) {
@@ -144,26 +430,28 @@ public class StereoBus {
         }
         offline.clear();
 
-        // reset all effect internals (regardless of whether they were active)
+        // reset all other effect internals (regardless of whether they were active), RT effects were reset on leaving
         for (FX fx : effects) {
-            fx.reset();
+            if (!rt.contains(fx))
+                fx.reset();
         }
         // gui updates left to callers
     }
 
-    public void setActive(FX fx, boolean on) {
+    public synchronized void setActive(FX fx, boolean on) {
         boolean currentlyOn = isActive(fx);
         if (on == currentlyOn) return;
         toggle(fx);
     }
 
-    public boolean isActive(FX effect) {
+    public synchronized boolean isActive(FX effect) {
         if (rt.contains(effect))
-            return pendingActive.contains(effect);
+            return pendingActive.contains(effect) || warming.containsKey(effect);
         return offline.contains(effect);
     }
 
+    /** read-only view, no copy */
     public List<FX> listAll() {
-        return new ArrayList<>(effects);
+        return Collections.unmodifiableList(effects);
     }
 }
\ No newline at end of file
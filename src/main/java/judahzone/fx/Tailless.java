@@ -0,0 +1,11 @@
+package judahzone.fx;
+
+import judahzone.api.FX.RTFX;
+
+/**
+ * Marker: silent input gives silent output within the block (gains, shapers, short filters,
+ * detectors).  Behind a closed {@link Gate} StereoBus skips these until the first effect
+ * that may carry a tail (delays, reverbs, look-ahead); anything unmarked is processed.
+ */
+public interface Tailless extends RTFX {
+}
@@ -0,0 +1,19 @@
+package judahzone.fx;
+
+import judahzone.api.FX.RTFX;
+
+/**
+ * Optional sub-block form of an effect.  With tiling on, StereoBus runs consecutive Tileable
+ * effects of its chain tile by tile (see TiledChain), so a tile stays in L1 from the first
+ * effect to the last instead of every effect streaming the whole period through the cache.
+ */
+public interface Tileable extends RTFX {
+
+    /**
+     * Process frames [start, end) in place.  Called for consecutive tiles covering the block
+     * in order, tile edges on multiples of {@link Smoother#CONTROL}; the tiles together must
+     * produce the same output as process(left, right).  Right is null in mono.
+     */
+    void process(float[] left, float[] right, int start, int end);
+
+}
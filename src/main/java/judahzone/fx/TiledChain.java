@@ -0,0 +1,55 @@
+package judahzone.fx;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+import judahzone.api.FX.RTFX;
+
+/**
+ * Consecutive Tileable effects of a StereoBus chain, all of them per tile of the block.
+ * {@link Tailless} (skipped behind a closed Gate) when every stage is, see {@link #of}.
+ */
+class TiledChain implements RTFX {
+
+    private final Tileable[] stages;
+    private final int tile;
+    private final String name;
+
+    private static final class Silent extends TiledChain implements Tailless {
+        Silent(List<Tileable> run, int tile) {
+            super(run, tile);
+        }
+    }
+
+    static TiledChain of(List<Tileable> run, int tile) {
+        for (Tileable fx : run)
+            if (!(fx instanceof Tailless))
+                return new TiledChain(run, tile);
+        return new Silent(run, tile);
+    }
+
+    private TiledChain(List<Tileable> run, int tile) {
+        stages = run.toArray(new Tileable[0]);
+        this.tile = tile;
+        StringBuilder sb = new StringBuilder("Tiled");
+        for (Tileable fx : stages)
+            sb.append(' ').append(fx.getName());
+        name = sb.toString();
+    }
+
+    @Override public String getName() { return name; }
+    @Override public int getParamCount() { return 0; }
+    @Override public int get(int idx) { throw new InvalidParameterException("" + idx); }
+    @Override public void set(int idx, int value) { throw new InvalidParameterException("" + idx); }
+
+    @Override
+    public void process(float[] left, float[] right) {
+        final Tileable[] fx = stages;
+        for (int start = 0; start < N_FRAMES; start += tile) {
+            final int end = Math.min(start + tile, N_FRAMES);
+            for (Tileable t : fx)
+                t.process(left, right, start, end);
+        }
+    }
+
+}
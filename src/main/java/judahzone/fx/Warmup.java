@@ -0,0 +1,120 @@
+package judahzone.fx;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import judahzone.api.FX.RTFX;
+import judahzone.util.Constants;
+import judahzone.util.RTLogger;
+
+/**
+ * JIT warm-up of effects before they go live.  A cold process() runs interpreted or in C1,
+ * ten to a hundred times slower for the first few hundred cycles (xruns on stage).  While an
+ * effect being switched on waits, a shadow of it runs on low-level noise on a background
+ * thread, and only then is the effect handed to the RT thread.
+ *
+ * The shadow is a new instance of the same class (public no-argument constructor) with the
+ * effect's settings copied over: compiled code is per class, so it warms the methods the bus
+ * will call, along the branches those settings take.  The effect itself is never touched
+ * here, it keeps its settings and goes live with clean state; a class without such a
+ * constructor is not warmed and goes live at once.  Per-call time levels off after 3000 to
+ * 6000 cycles of 512 frames (Overdrive, Freeverb, FDNReverb, Compressor, EQ); {@link #CYCLES}
+ * is past that.  Later instances of a warm class go live at once, settings that take other
+ * branches (another Overdrive algorithm) are not covered.
+ */
+public final class Warmup {
+
+    private static final int N_FRAMES = Constants.bufSize();
+
+    /** noise cycles per effect */
+    public static final int CYCLES = 5000;
+    // -40 dBFS white noise, so that no silence short-cuts are taken
+    private static final float NOISE = 0.01f;
+
+    private static final Set<Class<?>> warm = ConcurrentHashMap.newKeySet();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            r -> { Thread t = new Thread(r, Warmup.class.getSimpleName());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t; });
+
+    /** A pending warm-up, cancelled if the effect is switched off before it is done. */
+    static final class Job {
+        final RTFX fx;
+        volatile boolean cancelled;
+
+        Job(RTFX fx) {
+            this.fx = fx;
+        }
+    }
+
+    private Warmup() {}
+
+    /** true once an effect of this class has been warmed up */
+    public static boolean isWarm(RTFX fx) {
+        return warm.contains(fx.getClass());
+    }
+
+    /** warm fx up on the warm-up thread, then hand the job to done there (unless cancelled), even if it threw */
+    static Job submit(RTFX fx, Consumer<Job> done) {
+        final Job job = new Job(fx);
+        executor.execute(() -> {
+            try {
+                run(job);
+            } catch (Throwable t) {
+                RTLogger.warn(t);
+            }
+            if (!job.cancelled)
+                done.accept(job);
+        });
+        return job;
+    }
+
+    private static void run(Job job) {
+        final RTFX fx = shadow(job.fx);
+        if (fx == null)
+            return;
+        final float[] noiseL = new float[N_FRAMES];
+        final float[] noiseR = new float[N_FRAMES];
+        final Random rnd = new Random(N_FRAMES);
+        for (int i = 0; i < N_FRAMES; i++) {
+            noiseL[i] = (rnd.nextFloat() * 2 - 1) * NOISE;
+            noiseR[i] = (rnd.nextFloat() * 2 - 1) * NOISE;
+        }
+        final float[] l = new float[N_FRAMES];
+        final float[] r = new float[N_FRAMES];
+        for (int c = 0; c < CYCLES && !job.cancelled; c++) {
+            if (fx instanceof OutOfPlace oop) // as StereoBus runs it, reading another pair
+                oop.process(noiseL, noiseR, l, r);
+            else {
+                System.arraycopy(noiseL, 0, l, 0, N_FRAMES);
+                System.arraycopy(noiseR, 0, r, 0, N_FRAMES);
+                fx.process(l, r);
+            }
+        }
+        if (!job.cancelled)
+            warm.add(fx.getClass());
+    }
+
+    // a new instance with the knobs of fx, null without a public no-argument constructor
+    private static RTFX shadow(RTFX fx) {
+        final RTFX result;
+        try {
+            result = fx.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        for (int i = 0; i < fx.getParamCount(); i++)
+            try {
+                result.set(i, fx.get(i));
+            } catch (RuntimeException e) { } // not settable here (no IR database), keep the default
+        result.activate();
+        return result;
+    }
+
+}
@@ -1,21 +1,26 @@
 package judahzone.fx.analysis;
 
-import static judahzone.util.WavConstants.JACK_BUFFER;
-
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 import judahzone.api.FX.Calc;
-import judahzone.util.Memory;
 import judahzone.util.RTLogger;
-import judahzone.util.Recording;
 
 /**
  * Convenience Effect for "copy & analyze" style offline analysis effects.
- * - Standardize snapshot/copy from RT into a Recording
- * Subclasses must implement analyze(Recording) which runs on the executor thread.
+ * - Standardize snapshot/copy from RT into one of two preallocated windows
+ * Subclasses must implement analyze(left, right) which runs on the executor thread.
+ *
+ * The RT side does not allocate or lock: a full window is handed to the executor as a reused
+ * task, the default executor takes it through one atomic slot and unparks its thread (a
+ * queue's lock, contended by the analyzer thread, blocks and allocates), and while the other
+ * window is still being analyzed a full window is dropped and refilled instead of queued.  The windows
+ * are reused, analyze() must copy what it keeps.
  */
 // public abstract T analyze(float[] left, float[] right);
 public abstract class Analysis<T> implements Calc<T> {
@@ -25,20 +30,33 @@ public abstract class Analysis<T> implements Calc<T> {
 
     private final Consumer<T> listener;
     private final int bufferSize;
-    private Recording realtime = new Recording();
+
+    // RT thread fills one while the other may be analyzed
+    private final Window first;
+    private final Window second;
+    private Window filling;
+    // first write of a window: negative drops the oldest samples when bufferSize is not a multiple of N_FRAMES
+    private final int start;
+    private int pos;
 
     /** int bufferSize buffering in samples */
     protected Analysis(Consumer<T> l, int bufferSize) {
-        this(l, bufferSize, Executors.newSingleThreadExecutor(
-        	r -> { Thread t = new Thread(r, defaultThreadName());
-            			t.setDaemon(true);
-            			return t; }));
+        this(l, bufferSize, defaultExecutor());
     }
 
     protected Analysis(Consumer<T> listener, int bufferSize, ExecutorService executor) {
     	this.bufferSize = bufferSize;
         this.listener = Objects.requireNonNull(listener);
         this.executor = Objects.requireNonNull(executor);
+        first = new Window();
+        second = new Window();
+        filling = first;
+        start = bufferSize - (bufferSize + N_FRAMES - 1) / N_FRAMES * N_FRAMES;
+        pos = start;
+    }
+
+    private static ExecutorService defaultExecutor() {
+        return new Handoff();
     }
 
     /** Default thread name for the internal executor. Subclasses may override. */
@@ -47,55 +65,114 @@ public abstract class Analysis<T> implements Calc<T> {
     }
 
     /**
-     * Snapshot the provided buffers and submit an analysis job.
-     * Subclasses must implement analyze(left,right) which runs on executor thread.
+     * One daemon thread fed one task at a time by one producer (the RT thread): execute()
+     * publishes the task in a volatile slot and unparks the thread, neither locks nor
+     * allocates.  A task offered while another is still waiting is dropped, as by a full
+     * queue of one.
      */
-    @Override
-    public final void process(float[] left, float[] right) {
-        final float[][] frame = Memory.STEREO.getFrame();
-        System.arraycopy(left,  0, frame[0], 0, N_FRAMES);
-        System.arraycopy(right, 0, frame[1], 0, N_FRAMES);
-        realtime.add(frame);
-        if (realtime.size() * JACK_BUFFER < bufferSize)
-            return; // building up
+    private static final class Handoff extends AbstractExecutorService {
+        private final Thread thread = new Thread(this::loop, defaultThreadName());
+        private volatile Runnable next;
+        private volatile boolean shutdown;
+
+        Handoff() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (shutdown || next != null)
+                return;
+            next = task;
+            LockSupport.unpark(thread);
+        }
+
+        private void loop() {
+            while (!shutdown) {
+                final Runnable task = next;
+                if (task == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                next = null; // the slot is free again before the task runs
+                task.run();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            thread.interrupt();
+            final Runnable pending = next;
+            next = null;
+            return pending == null ? List.of() : List.of(pending);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && !thread.isAlive();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            thread.join(Math.max(1, unit.toMillis(timeout)));
+            return !thread.isAlive();
+        }
+    }
 
-        // buffering complete, snapshot the accumulated Recording and submit an analysis job
-        final Recording job = realtime;
+    private final class Window implements Runnable {
+        final float[] left = new float[bufferSize];
+        final float[] right = new float[bufferSize];
+        volatile boolean busy;
 
-        executor.submit(() -> {
+        @Override
+        public void run() {
             try {
-                // Prepare contiguous float[] windows of length bufferSize.
-                // Defensive: Recording may be exactly bufferSize long or slightly larger;
-                // take the newest bufferSize samples if larger, zero-pad if smaller.
-                float[] fullLeft = job.getLeft();
-                float[] fullRight = job.getChannel(1);
-
-                float[] inLeft = new float[bufferSize];
-                float[] inRight = new float[bufferSize];
-
-                int flen = (fullLeft != null) ? fullLeft.length : 0;
-                int rlen = (fullRight != null) ? fullRight.length : 0;
-
-                int startL = Math.max(0, flen - bufferSize);
-                int copyL = Math.min(bufferSize, Math.max(0, flen - startL));
-                if (copyL > 0) System.arraycopy(fullLeft, startL, inLeft, 0, copyL);
-
-                int startR = Math.max(0, rlen - bufferSize);
-                int copyR = Math.min(bufferSize, Math.max(0, rlen - startR));
-                if (copyR > 0) System.arraycopy(fullRight, startR, inRight, 0, copyR);
-
-                // Call subclass analyze on the prepared buffers
-                T t = analyze(inLeft, inRight);
+                T t = analyze(left, right);
                 if (t != null)
                     listener.accept(t);
-                Memory.STEREO.release(job);
             } catch (Throwable t) {
                 RTLogger.warn(t);
+            } finally {
+                busy = false;
             }
-        });
+        }
+    }
+
+    /**
+     * Snapshot the provided buffers and submit an analysis job.
+     * Subclasses must implement analyze(left,right) which runs on executor thread.
+     */
+    @Override
+    public final void process(float[] left, float[] right) {
+        final Window w = filling;
+        final int from = Math.max(0, -pos);
+        System.arraycopy(left,  from, w.left,  pos + from, N_FRAMES - from);
+        System.arraycopy(right, from, w.right, pos + from, N_FRAMES - from);
+        pos += N_FRAMES;
+        if (pos < bufferSize)
+            return; // building up
 
-        // start fresh
-        realtime = new Recording();
+        // window complete: analyze it while the other one fills, unless that one is still busy
+        pos = start;
+        final Window next = w == first ? second : first;
+        if (next.busy)
+            return; // analysis behind, drop this window and refill it
+        w.busy = true;
+        executor.execute(w);
+        filling = next;
     }
 
     /** Stop accepting new jobs and shutdown the internal executor. */
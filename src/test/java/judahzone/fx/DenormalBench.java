@@ -0,0 +1,90 @@
+package judahzone.fx;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import judahzone.api.FX;
+
+/**
+ * Cost of a decaying tail with and without {@link Denormal#OFFSET}: each recursive effect
+ * gets a burst of noise, then silence long enough for its state to decay into the subnormal
+ * range when unprotected, and the silent blocks are timed.  Not a unit test (surefire skips
+ * it), run it by hand from the test classpath:
+ *   java -cp target/classes:target/test-classes judahzone.fx.DenormalBench
+ * The offset is a static final, so both settings run in a forked JVM of their own.
+ * Best of {@link #RUNS}, after a warm-up; "subnormal" counts output samples in that range.
+ */
+public final class DenormalBench {
+
+    private static final int N_FRAMES = FX.N_FRAMES;
+    private static final int BURST = 100;
+    /** blocks of silence, about a minute */
+    private static final int TAIL = 6000;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (boolean off : new boolean[] {false, true})
+                new ProcessBuilder(java, "-Dzone.fx.denormals=" + off, "-cp",
+                        System.getProperty("java.class.path"), DenormalBench.class.getName(), "run")
+                        .inheritIO().start().waitFor();
+            return;
+        }
+        System.out.println(Denormal.OFFSET == 0 ? "without offset" : "with offset " + Denormal.OFFSET);
+        System.out.printf("  %-12s %12s %12s%n", "", "us / block", "subnormal");
+        Delay delay = new Delay();
+        delay.set(Delay.Settings.DelayTime.ordinal(), 0);
+        delay.set(Delay.Settings.Feedback.ordinal(), 40);
+        Filter lowPass = new Filter(true);
+        lowPass.set(Filter.Settings.Hz.ordinal(), 30);
+        for (FX fx : new FX[] {new Freeverb(), new FDNReverb(), delay, new Chorus(), lowPass,
+                new EQ(), new Compressor(), new Gate()})
+            bench(fx);
+    }
+
+    private static void bench(FX fx) {
+        final float[] l = new float[N_FRAMES];
+        final float[] r = new float[N_FRAMES];
+        final Random rnd = new Random(N_FRAMES);
+        for (int c = 0; c < Warmup.CYCLES; c++) {
+            noise(rnd, l, r);
+            fx.process(l, r);
+        }
+        double best = Double.MAX_VALUE;
+        long subnormal = 0;
+        for (int run = 0; run < RUNS; run++) {
+            for (int c = 0; c < BURST; c++) {
+                noise(rnd, l, r);
+                fx.process(l, r);
+            }
+            long ns = 0;
+            subnormal = 0;
+            for (int c = 0; c < TAIL; c++) {
+                Arrays.fill(l, 0f);
+                Arrays.fill(r, 0f);
+                long start = System.nanoTime();
+                fx.process(l, r);
+                ns += System.nanoTime() - start;
+                for (int i = 0; i < N_FRAMES; i++)
+                    if (isSubnormal(l[i]) || isSubnormal(r[i]))
+                        subnormal++;
+            }
+            best = Math.min(best, ns / 1000.0 / TAIL);
+        }
+        System.out.printf("  %-12s %12.2f %12d%n", fx.getClass().getSimpleName(), best, subnormal);
+    }
+
+    private static void noise(Random rnd, float[] l, float[] r) {
+        for (int i = 0; i < N_FRAMES; i++) {
+            l[i] = rnd.nextFloat() - 0.5f;
+            r[i] = rnd.nextFloat() - 0.5f;
+        }
+    }
+
+    private static boolean isSubnormal(float x) {
+        return x != 0 && Math.abs(x) < Float.MIN_NORMAL;
+    }
+
+}
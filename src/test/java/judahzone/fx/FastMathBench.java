@@ -0,0 +1,80 @@
+package judahzone.fx;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * ns per call of each {@link FastMath} function against java.lang.Math, on inputs spread over
+ * the documented domain.  Not a unit test (surefire skips it), run it by hand from the test
+ * classpath:  java -cp target/classes:target/test-classes judahzone.fx.FastMathBench [name]
+ * Every function runs in a JVM of its own (forked when no name is given): one call site fed
+ * all of them would not inline, and time the dispatch.  Best of {@link #RUNS} after a warm-up,
+ * a sink keeps the results alive.
+ */
+public final class FastMathBench {
+
+    private static final int SIZE = 4096;
+    private static final int REPEAT = 2000;
+    private static final int RUNS = 7;
+
+    private interface FloatOp {
+        float apply(float x);
+    }
+
+    private static float sink;
+
+    private static final String[] NAMES = {"sin", "cos", "tan", "sinh", "exp2", "log2", "dB2rap", "rap2dB"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.printf("%-8s %10s %10s%n", "", "FastMath", "Math");
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (String name : NAMES)
+                new ProcessBuilder(java, "-Dzone.fx.precise=" + FastMath.PRECISE, "-cp",
+                        System.getProperty("java.class.path"), FastMathBench.class.getName(), name)
+                        .inheritIO().start().waitFor();
+            return;
+        }
+        switch (args[0]) {
+            case "sin" -> bench("sin", FastMath::sin, x -> (float) Math.sin(x), -50, 50);
+            case "cos" -> bench("cos", FastMath::cos, x -> (float) Math.cos(x), -50, 50);
+            case "tan" -> bench("tan", FastMath::tan, x -> (float) Math.tan(x), 0, 1.45f);
+            case "sinh" -> bench("sinh", FastMath::sinh, x -> (float) Math.sinh(x), -4, 4);
+            case "exp2" -> bench("exp2", FastMath::exp2, x -> (float) Math.pow(2, x), -126, 127);
+            case "log2" -> bench("log2", FastMath::log2, x -> (float) (Math.log(x) * FastMath.LOG2_E), 1e-6f, 1e6f);
+            case "dB2rap" -> bench("dB2rap", FastMath::dB2rap, dB -> (float) Math.pow(10, dB / 20), -120, 24);
+            case "rap2dB" -> bench("rap2dB", FastMath::rap2dB, x -> (float) (20 * Math.log10(x)), 1e-6f, 4);
+            default -> throw new IllegalArgumentException(args[0] + ", one of " + String.join(" ", NAMES));
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static void bench(String name, FloatOp fast, FloatOp exact, float from, float to) {
+        float[] in = new float[SIZE];
+        Random rnd = new Random(SIZE);
+        for (int i = 0; i < SIZE; i++)
+            in[i] = from + rnd.nextFloat() * (to - from);
+        System.out.printf("%-8s %10.2f %10.2f  ns%n", name, best(fast, in), best(exact, in));
+    }
+
+    private static double best(FloatOp op, float[] in) {
+        time(op, in); // warm-up
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++)
+            best = Math.min(best, time(op, in));
+        return best;
+    }
+
+    private static double time(FloatOp op, float[] in) {
+        float acc = 0;
+        long start = System.nanoTime();
+        for (int k = 0; k < REPEAT; k++)
+            for (float x : in)
+                acc += op.apply(x);
+        long ns = System.nanoTime() - start;
+        sink += acc;
+        return (double) ns / REPEAT / in.length;
+    }
+
+}
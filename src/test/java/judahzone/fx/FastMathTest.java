@@ -0,0 +1,107 @@
+package judahzone.fx;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The error table of {@link FastMath}: every function swept over its documented domain
+ * against java.lang.Math in double precision.
+ */
+class FastMathTest {
+
+    private static final int STEPS = 1_000_000;
+
+    private interface FloatOp {
+        float apply(float x);
+    }
+
+    @Test
+    void sin_cos() {
+        assertAbsolute("sin", FastMath::sin, Math::sin, -50, 50, 5e-6);
+        assertAbsolute("cos", FastMath::cos, Math::cos, -50, 50, 5e-6);
+    }
+
+    @Test
+    void tan_up_to_prewarp_limit() {
+        assertRelative("tan", FastMath::tan, Math::tan, 0, 1.45, 1e-5);
+    }
+
+    @Test
+    void sinh() {
+        assertRelative("sinh", FastMath::sinh, Math::sinh, -4, 4, 1e-5);
+    }
+
+    @Test
+    void exp2() {
+        assertRelative("exp2", FastMath::exp2, x -> Math.pow(2, x), -126, 127, 4e-6);
+    }
+
+    @Test
+    void dB2rap() {
+        assertRelative("dB2rap", FastMath::dB2rap, dB -> Math.pow(10, dB / 20), -400, 400, 1e-5);
+    }
+
+    @Test
+    void log2_rap2dB() {
+        double log2 = 0, dB = 0;
+        float worstLog2 = 0, worstDB = 0;
+        // every 127th normal float: all exponents, mantissas spread over [1, 2)
+        for (int bits = Float.floatToRawIntBits(Float.MIN_NORMAL); bits < 0x7f800000; bits += 127) {
+            float x = Float.intBitsToFloat(bits);
+            double exact = Math.log(x) / Math.log(2);
+            double e = Math.abs(FastMath.log2(x) - exact);
+            if (e > log2) {
+                log2 = e;
+                worstLog2 = x;
+            }
+            e = Math.abs(FastMath.rap2dB(x) - 20 * Math.log10(x));
+            if (e > dB) {
+                dB = e;
+                worstDB = x;
+            }
+        }
+        assertBound("log2", log2, 1.1e-4, worstLog2);
+        assertBound("rap2dB", dB, 0.0007, worstDB);
+    }
+
+    private static void assertAbsolute(String name, FloatOp fast, DoubleUnaryOperator exact,
+            double from, double to, double bound) {
+        double max = 0;
+        float worst = 0;
+        for (int i = 0; i <= STEPS; i++) {
+            float x = (float) (from + (to - from) * i / STEPS);
+            double e = Math.abs(fast.apply(x) - exact.applyAsDouble(x));
+            if (e > max) {
+                max = e;
+                worst = x;
+            }
+        }
+        assertBound(name, max, bound, worst);
+    }
+
+    private static void assertRelative(String name, FloatOp fast, DoubleUnaryOperator exact,
+            double from, double to, double bound) {
+        double max = 0;
+        float worst = 0;
+        for (int i = 0; i <= STEPS; i++) {
+            float x = (float) (from + (to - from) * i / STEPS);
+            double ref = exact.applyAsDouble(x);
+            if (ref == 0)
+                continue;
+            double e = Math.abs((fast.apply(x) - ref) / ref);
+            if (e > max) {
+                max = e;
+                worst = x;
+            }
+        }
+        assertBound(name, max, bound, worst);
+    }
+
+    private static void assertBound(String name, double max, double bound, float worst) {
+        assertTrue(max < bound, () -> name + " error " + max + " at " + worst + ", documented < " + bound);
+    }
+
+}
@@ -0,0 +1,195 @@
+package judahzone.fx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import judahzone.api.FX;
+import judahzone.api.FX.RTFX;
+import judahzone.fx.analysis.Transformer;
+import judahzone.fx.analysis.Waveform;
+
+/**
+ * Nothing on the RT path allocates: every effect, and a bus running all of them plain, fused,
+ * tiled and as a graph, with set() called at random between blocks (as the GUI and the
+ * modulation matrix do).  Bytes are counted by the JVM per thread, the budget is zero.
+ */
+class RtAllocationTest {
+
+    private static final int N_FRAMES = FX.N_FRAMES;
+    /**
+     * Past lazy initialisation and the switch to C2 code, which allocates on the calling
+     * thread once (not with C1 alone): a process() without a hot loop, called once per
+     * block, only gets there after 5000 calls, around the end of a {@link Warmup}.
+     */
+    private static final int WARM = 2 * Warmup.CYCLES;
+    private static final int CYCLES = 2000;
+
+    private static final com.sun.management.ThreadMXBean MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Random rnd = new Random(7);
+    private final float[] left = new float[N_FRAMES];
+    private final float[] right = new float[N_FRAMES];
+    // highest value set() takes per parameter, -1 to leave it alone
+    private final IdentityHashMap<FX, int[]> range = new IdentityHashMap<>();
+
+    private static List<FX> effects() {
+        List<FX> fx = new ArrayList<>();
+        fx.add(new Chorus());
+        fx.add(new Compressor());
+        fx.add(new Convolution.Stereo());
+        fx.add(new Delay());
+        fx.add(new EQ());
+        fx.add(new FDNReverb());
+        fx.add(new Filter(true));
+        fx.add(new Filter(false));
+        fx.add(new Freeverb());
+        fx.add(new Gain());
+        fx.add(new Gate());
+        fx.add(new Limiter());
+        fx.add(new Overdrive());
+        fx.add(new Waveform(rms -> { }));
+        fx.add(new Transformer(transform -> { }));
+        return fx;
+    }
+
+    @Test
+    void effects_do_not_allocate() {
+        assumeAllocationCounting();
+        for (FX fx : effects()) {
+            run(fx, WARM);
+            assertEquals(0, run(fx, CYCLES), fx.getName() + " allocated bytes");
+        }
+    }
+
+    @Test
+    void chain_does_not_allocate() {
+        assertBus(false, 0, false);
+    }
+
+    @Test
+    void fused_chain_does_not_allocate() {
+        assertBus(true, 0, false);
+    }
+
+    @Test
+    void tiled_chain_does_not_allocate() {
+        assertBus(false, 64, false);
+    }
+
+    @Test
+    void graph_does_not_allocate() {
+        assertBus(false, 0, true);
+    }
+
+    /** every effect switched on, two modulation routes, set() on a random effect per block */
+    private void assertBus(boolean fusion, int tile, boolean dag) {
+        assumeAllocationCounting();
+        List<FX> fx = effects();
+        StereoBus bus = new StereoBus(fx.toArray(new FX[0]));
+        bus.setWarmup(false);
+        bus.setFusion(fusion);
+        bus.setTile(tile);
+        for (FX f : fx)
+            if (f instanceof RTFX)
+                bus.toggle(f);
+        Modulator.LFO lfo = new Modulator.LFO();
+        lfo.setRate(5);
+        bus.getMatrix().add(lfo, fx.get(12), Overdrive.Settings.Drive.ordinal(), 30f);
+        bus.getMatrix().add(lfo, fx.get(9), Gain.VOLUME, 20f);
+        if (dag) { // parallel compression, a wet/dry reverb split, out-of-place convolution
+            List<FX> nodes = effects();
+            fx.addAll(nodes);
+            EffectGraph g = new EffectGraph();
+            int dry = g.input();
+            int squashed = g.add((RTFX) nodes.get(1), dry);
+            int drive = g.add((RTFX) nodes.get(12), g.mix(new float[] {1f, 0.7f}, dry, squashed));
+            int cab = g.add((RTFX) nodes.get(2), drive);
+            int wet = g.add((RTFX) nodes.get(5), g.add((RTFX) nodes.get(3), cab));
+            g.output(g.add((RTFX) nodes.get(11), g.mix(new float[] {0.8f, 0.4f}, cab, wet)));
+            bus.setGraph(g);
+        }
+
+        final long thread = Thread.currentThread().getId();
+        long bytes = 0;
+        for (int c = 0; c < WARM + CYCLES; c++) {
+            noise();
+            set(fx.get(rnd.nextInt(fx.size())));
+            long before = MX.getThreadAllocatedBytes(thread);
+            bus.process(left, right);
+            if (c >= WARM)
+                bytes += MX.getThreadAllocatedBytes(thread) - before;
+        }
+        assertEquals(0, bytes, "bus allocated bytes (fusion " + fusion + ", tile " + tile + ", graph " + dag + ")");
+    }
+
+    /** bytes allocated by process() alone, set() stands for the GUI thread and is not counted */
+    private long run(FX fx, int cycles) {
+        final long thread = Thread.currentThread().getId();
+        range(fx);
+        long bytes = 0;
+        for (int c = 0; c < cycles; c++) {
+            noise();
+            if (rnd.nextInt(4) == 0)
+                set(fx);
+            long before = MX.getThreadAllocatedBytes(thread);
+            fx.process(left, right);
+            bytes += MX.getThreadAllocatedBytes(thread) - before;
+        }
+        return bytes;
+    }
+
+    private void noise() {
+        for (int i = 0; i < N_FRAMES; i++) {
+            left[i] = (rnd.nextFloat() - 0.5f) * 0.5f;
+            right[i] = (rnd.nextFloat() - 0.5f) * 0.5f;
+        }
+    }
+
+    /** a random parameter to a random value in its range */
+    private void set(FX fx) {
+        int[] max = range(fx);
+        if (max.length == 0)
+            return;
+        int idx = rnd.nextInt(max.length);
+        if (max[idx] >= 0)
+            fx.set(idx, rnd.nextInt(max[idx] + 1));
+    }
+
+    // probed once, outside the measurement: selecting settings throw past their last value
+    private int[] range(FX fx) {
+        int[] max = range.get(fx);
+        if (max != null)
+            return max;
+        max = new int[fx.getParamCount()];
+        for (int i = 0; i < max.length; i++) {
+            max[i] = -1;
+            if (fx instanceof Convolution && i == Convolution.Settings.Cabinet.ordinal())
+                continue; // no impulse responses loaded here
+            int knob = fx.get(i);
+            try {
+                for (int v = 0; v <= 100; v++) {
+                    fx.set(i, v);
+                    max[i] = v;
+                }
+            } catch (RuntimeException past) { }
+            fx.set(i, knob);
+        }
+        range.put(fx, max);
+        return max;
+    }
+
+    private static void assumeAllocationCounting() {
+        assumeTrue(MX.isThreadAllocatedMemorySupported() && MX.isThreadAllocatedMemoryEnabled(),
+                "per-thread allocation counting");
+    }
+
+}
@@ -0,0 +1,91 @@
+package judahzone.fx;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import judahzone.api.FX;
+
+/**
+ * ns per stereo frame of a {@link StereoBus} chain processed whole and tiled, the table of
+ * {@link StereoBus#setTile(int)}.  Not a unit test (surefire skips it), run it by hand from
+ * the test classpath:  java -cp target/classes:target/test-classes judahzone.fx.TileBench
+ * One row per run at the configured block size (Constants.bufSize()), run it once per
+ * buffer size.  Every chain and tile size runs in a JVM of its own (forked with this one's
+ * arguments), so one profile does not tune the next.  Best of {@link #RUNS} after a warm-up.
+ */
+public final class TileBench {
+
+    private static final int N_FRAMES = FX.N_FRAMES;
+    private static final int[] TILES = {0, 32, 64};
+    /** frames per run, whatever the block size */
+    private static final int FRAMES = 4_000_000;
+    private static final int RUNS = 8;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            System.out.printf("%-6s %6s %8s %8s %8s%n", "chain", "frames", "whole", "tile 32", "tile 64");
+            for (String chain : new String[] {"mixed", "gains"}) {
+                System.out.printf("%-6s %6d", chain, N_FRAMES);
+                System.out.flush();
+                for (int tile : TILES) {
+                    List<String> cmd = new ArrayList<>();
+                    cmd.add(java);
+                    cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                    cmd.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                            TileBench.class.getName(), chain, Integer.toString(tile)));
+                    new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                            .start().waitFor();
+                }
+                System.out.println();
+            }
+            return;
+        }
+        int tile = Integer.parseInt(args[1]);
+        if (tile >= N_FRAMES) {
+            System.out.printf(" %8s", "-");
+            System.out.flush();
+            return;
+        }
+        FX[] chain = switch (args[0]) {
+            // the setTile() table: EQ, HiCut, Gain, Overdrive, LoCut, EQ
+            case "mixed" -> new FX[] {new EQ(), new Filter(true), new Gain(), new Overdrive(), new Filter(false), new EQ()};
+            case "gains" -> new FX[] {new Gain(), new Gain(), new Gain(), new Gain(), new Gain(), new Gain()};
+            default -> throw new IllegalArgumentException(args[0] + ", one of mixed gains");
+        };
+        System.out.printf(" %8.2f", bench(chain, tile));
+        System.out.flush();
+    }
+
+    private static double bench(FX[] chain, int tile) {
+        StereoBus bus = new StereoBus(chain);
+        bus.setWarmup(false);
+        bus.setTile(tile);
+        for (FX fx : chain)
+            bus.toggle(fx);
+        final float[] l = new float[N_FRAMES];
+        final float[] r = new float[N_FRAMES];
+        final Random rnd = new Random(N_FRAMES);
+        for (int i = 0; i < N_FRAMES; i++) {
+            l[i] = rnd.nextFloat() - 0.5f;
+            r[i] = rnd.nextFloat() - 0.5f;
+        }
+        final int blocks = Math.max(1, FRAMES / N_FRAMES);
+        time(bus, l, r, blocks); // warm-up
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++)
+            best = Math.min(best, time(bus, l, r, blocks));
+        return best;
+    }
+
+    private static double time(StereoBus bus, float[] l, float[] r, int blocks) {
+        long start = System.nanoTime();
+        for (int b = 0; b < blocks; b++)
+            bus.process(l, r);
+        return (double) (System.nanoTime() - start) / blocks / N_FRAMES;
+    }
+
+}